@@ -1,6 +1,9 @@
 package ch.fhnw.edu.rental.gui;
 
 import java.time.LocalDate;
+import java.util.List;
+
+import ch.fhnw.edu.rental.persistence.MovieFilter;
 
 public interface BusinessLogic {
 	
@@ -25,6 +28,8 @@ public interface BusinessLogic {
 	
 	// Rentals
 	public void createRental(Long movieId, Long userId, Integer rentalDays);
+	/** Rents all given movies to the user, or none of them if one is rented already. */
+	public void createRentals(List<Long> movieIds, Long userId, Integer rentalDays);
 	public void removeRental(Long rentalId);
 
 
@@ -33,18 +38,28 @@ public interface BusinessLogic {
 	}
 
 	public void visitUsers(UserVisitor visitor);
+	/** Visits at most {@code limit} users with an id greater than {@code afterId} (null for the first page), ordered by id. */
+	public void visitUsers(Long afterId, int limit, UserVisitor visitor);
 	
 	public interface MovieVisitor {
 		public void visit(Long id, String title, LocalDate releaseDate, boolean isRented, String priceCategory);
 	}
 
 	public void visitMovies(MovieVisitor visitor);
+	/** Visits at most {@code limit} movies with an id greater than {@code afterId} (null for the first page), ordered by id. */
+	public void visitMovies(Long afterId, int limit, MovieVisitor visitor);
+	/** Visits the movies matching the filter, ordered by id; only those are read from the store. */
+	public void visitMovies(MovieFilter filter, MovieVisitor visitor);
+	/** Visits one page of the movies matching the filter, like {@link #visitMovies(Long, int, MovieVisitor)}. */
+	public void visitMovies(MovieFilter filter, Long afterId, int limit, MovieVisitor visitor);
 
 	public interface RentalVisitor {
 		public void visit(Long id, int rentalDays, LocalDate rentalDate, String lastName, String firstName, String movieTitle, int remainingDays, double rentalFee);
 	}
 
 	public void visitRentals(RentalVisitor visitor);
+	/** Visits at most {@code limit} rentals with an id greater than {@code afterId} (null for the first page), ordered by id. */
+	public void visitRentals(Long afterId, int limit, RentalVisitor visitor);
 	public void visitRentalsOfUser(Long userId, RentalVisitor visitor);
 
 }
@@ -2,14 +2,17 @@ package ch.fhnw.edu.rental.gui;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import ch.fhnw.edu.rental.model.Money;
 import ch.fhnw.edu.rental.model.Movie;
 import ch.fhnw.edu.rental.model.PriceCategory;
-import ch.fhnw.edu.rental.model.Rental;
 import ch.fhnw.edu.rental.model.User;
+import ch.fhnw.edu.rental.persistence.MovieFilter;
+import ch.fhnw.edu.rental.persistence.RentalRepository.RentalRow;
 import ch.fhnw.edu.rental.services.MovieService;
 import ch.fhnw.edu.rental.services.RentalService;
 import ch.fhnw.edu.rental.services.UserService;
@@ -36,7 +39,7 @@ public class BusinessLogicLocal implements BusinessLogic {
 		return getUser(id).getFirstName();
 	}
 	public int getUserRentalsSize(Long id){
-		return getUser(id).getRentals().size();
+		return userService.getNumberOfRentals(id);
 	}
 	
 	public String getMovieTitle(Long id){
@@ -61,13 +64,9 @@ public class BusinessLogicLocal implements BusinessLogic {
 		return movieService.getMovieById(id);
 	}
 	
-	private Rental getRental(Long id){
-		return rentalService.getRentalById(id);
-	}
-	
 	
 	public void removeRental(Long rentalId){
-		rentalService.deleteRental(getRental(rentalId));
+		userService.returnRental(rentalId);
 	}
 	
 	public void deleteUser(Long userId) {
@@ -76,8 +75,10 @@ public class BusinessLogicLocal implements BusinessLogic {
 
 	public void updateUser(Long userId, String lastName, String firstName) {
 		// this method only changes the name of the user, but the referenced rentals are not changed.
-		User user = new User(lastName, firstName);
-		user.setId(userId);
+		// only the changed names are written, nothing if both are unchanged.
+		User user = getUser(userId);
+		user.setLastName(lastName);
+		user.setFirstName(firstName);
 		user = userService.save(user); // save method has to ignore the associated rentals
 	}
 
@@ -92,25 +93,23 @@ public class BusinessLogicLocal implements BusinessLogic {
 	}
 
 	public Long createMovie(String movieTitle, LocalDate date, String category) {
-		Movie movie = null;
-		for(PriceCategory pc : movieService.getAllPriceCategories()){
-			if(pc.toString().equals(category)){
-				movie = Movie.of(movieTitle, date, pc);
-			}
-		}
+		PriceCategory pc = movieService.getPriceCategoryByName(category);
+		Movie movie = Movie.of(movieTitle, date, pc);
 		movie = movieService.saveMovie(movie);
 		return movie.getId();
 	}
 
 	public void updateMovie(Long movieId, String movieTitle, LocalDate date,	String category) {
 		// only called when movie is updated
-		Movie movie = null;
 		Movie orig = movieService.getMovieById(movieId);
-		for(PriceCategory pc : movieService.getAllPriceCategories()){
-			if(pc.toString().equals(category)){
-				movie = Movie.of(movieTitle, date, pc);
-			}
+		PriceCategory pc = movieService.getPriceCategoryByName(category);
+		if (orig.getTitle().equals(movieTitle) && orig.getReleaseDate().equals(date)) {
+			// only a changed price category is written
+			orig.setPriceCategory(pc);
+			movieService.saveMovie(orig);
+			return;
 		}
+		Movie movie = Movie.of(movieTitle, date, pc);
 		movie.setId(movieId);
 		movie.setRented(orig.isRented());
 		movie = movieService.saveMovie(movie);
@@ -121,34 +120,62 @@ public class BusinessLogicLocal implements BusinessLogic {
 		User user = getUser(userId);
 		userService.rentMovie(user, movie, rentalDays);
 	}
+
+	public void createRentals(List<Long> movieIds, Long userId, Integer rentalDays) {
+		List<Movie> movies = movieService.getMoviesById(movieIds);
+		if (movies.size() != movieIds.size()) {
+			throw new IllegalArgumentException("movie not found");
+		}
+		userService.rentMovies(getUser(userId), movies, rentalDays);
+	}
 	
 	public void visitUsers(UserVisitor visitor) {
-		for(User u : userService.getAllUsers()){
-			visitor.visit(u.getId(), u.getLastName(), u.getFirstName());
-		}
+		visitUsers(null, Integer.MAX_VALUE, visitor);
+	}
+
+	public void visitUsers(Long afterId, int limit, UserVisitor visitor) {
+		// the users are streamed as rows, no entities or rental lists are created
+		userService.forEachUserRow(afterId, limit, visitor::visit);
 	}
 
 	public void visitMovies(MovieVisitor visitor) {
-		for (Movie m : movieService.getAllMovies()) {
-			visitor.visit(m.getId(), m.getTitle(), m.getReleaseDate(), m.isRented(), m.getPriceCategory().toString());
-		}
+		visitMovies(MovieFilter.ALL, visitor);
+	}
+
+	public void visitMovies(Long afterId, int limit, MovieVisitor visitor) {
+		visitMovies(MovieFilter.ALL, afterId, limit, visitor);
+	}
+
+	public void visitMovies(MovieFilter filter, MovieVisitor visitor) {
+		visitMovies(filter, null, Integer.MAX_VALUE, visitor);
+	}
+
+	public void visitMovies(MovieFilter filter, Long afterId, int limit, MovieVisitor visitor) {
+		movieService.forEachMovieRow(filter, afterId, limit,
+				(id, title, releaseDate, rented, priceCategory) -> visitor.visit(id, title, releaseDate, rented, priceCategory.toString()));
 	}
 
 	public void visitRentals(RentalVisitor visitor) {
-		for(Rental r : rentalService.getAllRentals()){
-			User user = r.getUser();
-			Movie movie = r.getMovie();
-			int remainingDays = r.getRentalDays() - (int)ChronoUnit.DAYS.between(r.getRentalDate(), LocalDate.now());
-			visitor.visit(r.getId(), r.getRentalDays(), r.getRentalDate(), user.getLastName(), user.getFirstName(), movie.getTitle(), remainingDays, r.getRentalFee());
-		}
+		visitRentals(null, Integer.MAX_VALUE, visitor);
+	}
+
+	public void visitRentals(Long afterId, int limit, RentalVisitor visitor) {
+		rentalService.forEachRentalRow(afterId, limit, rentalRow(visitor));
 	}
 
 	public void visitRentalsOfUser(Long userId, RentalVisitor visitor) {
-		User user = getUser(userId);
-		for(Rental r : user.getRentals()) {
-			int remainingDays = r.getRentalDays() - (int)ChronoUnit.DAYS.between(r.getRentalDate(), LocalDate.now());
-			visitor.visit(r.getId(), r.getRentalDays(), r.getRentalDate(), user.getLastName(), user.getFirstName(), r.getMovie().getTitle(), remainingDays, r.getRentalFee());
-		}
+		rentalService.forEachRentalRowOfUser(userId, rentalRow(visitor));
+	}
+
+	/**
+	 * Computes the remaining days and the fee of each row directly from its columns.
+	 */
+	private static RentalRow rentalRow(RentalVisitor visitor) {
+		LocalDate today = LocalDate.now();
+		return (id, rentalDays, rentalDate, lastName, firstName, movieTitle, priceCategory) -> {
+			int remainingDays = rentalDays - (int)ChronoUnit.DAYS.between(rentalDate, today);
+			visitor.visit(id, rentalDays, rentalDate, lastName, firstName, movieTitle, remainingDays, Money.toDouble(priceCategory.getChargeCents(rentalDays)));
+		};
 	}
 
 }
@@ -15,6 +15,9 @@ import java.awt.event.WindowEvent;
 import java.net.URI;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Pattern;
 
 import javax.swing.DefaultComboBoxModel;
@@ -40,6 +43,7 @@ import javax.swing.JTextField;
 import javax.swing.KeyStroke;
 import javax.swing.LayoutStyle;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingWorker;
 import javax.swing.UIManager;
 import javax.swing.WindowConstants;
 import javax.swing.event.ChangeEvent;
@@ -47,6 +51,7 @@ import javax.swing.event.ChangeListener;
 import javax.swing.table.DefaultTableModel;
 
 import ch.fhnw.edu.rental.gui.BusinessLogic.UserVisitor;
+import ch.fhnw.edu.rental.persistence.MovieFilter;
 
 public class MovieRentalApplicationGui extends JFrame {
 
@@ -54,6 +59,7 @@ public class MovieRentalApplicationGui extends JFrame {
 	public static final String LOOK_AND_FEEL_ERR_MSG = "Error attempting to set look and feel of the system";
 	public static final String DATA_DASE_ERR_MSG = "Error attempting to initialize database";
 	private static final String ABOUT_ERR_MSG = "Error attempting to launch web browser.";
+	private static final int MOVIE_PAGE_SIZE = 200;
 
 	public MovieRentalApplicationGui(BusinessLogic logic) {
 		// set system look and feel of the application
@@ -850,7 +856,7 @@ public class MovieRentalApplicationGui extends JFrame {
 			}
 		});
 
-		movieTable.setModel(new DefaultTableModel(mappers.getMovieListAsObject(false),
+		movieTable.setModel(new DefaultTableModel(new Object[][] {},
 				new String[] { "Movie ID", "Title", "Release Date", "Is Rented?", "Price Category" }) {
 			private static final long serialVersionUID = -5376743898459692217L;
 			private Class<?>[] types = new Class[] { java.lang.Long.class, java.lang.String.class,
@@ -860,10 +866,60 @@ public class MovieRentalApplicationGui extends JFrame {
 				return types[columnIndex];
 			}
 		});
-		movieTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		loadMovies((DefaultTableModel) movieTable.getModel(), MovieFilter.rented(false));
+		// several movies can be rented at once
+		movieTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
 		movieScrollPane.setViewportView(movieTable);
 	}
 
+	/**
+	 * Fills the given table model with movies in the background, one page at a time,
+	 * so that the first rows are shown at once and the UI stays responsive for large
+	 * catalogs. A load still running for a previous model is cancelled.
+	 * 
+	 * @param filter
+	 *            only movies matching this filter are loaded.
+	 */
+	private void loadMovies(final DefaultTableModel model, final MovieFilter filter) {
+		if (movieLoader != null) {
+			movieLoader.cancel(false);
+		}
+		movieLoader = new SwingWorker<Void, Object[]>() {
+			@Override
+			protected Void doInBackground() {
+				Long afterId = null;
+				Object[][] page;
+				do {
+					page = mappers.getMoviePageAsObject(filter, afterId, MOVIE_PAGE_SIZE);
+					publish(page);
+					if (page.length > 0)
+						afterId = (Long) page[page.length - 1][0];
+				} while (page.length == MOVIE_PAGE_SIZE && !isCancelled());
+				return null;
+			}
+
+			@Override
+			protected void process(List<Object[]> rows) {
+				if (!isCancelled()) {
+					for (Object[] row : rows)
+						model.addRow(row);
+				}
+			}
+
+			@Override
+			protected void done() {
+				if (isCancelled())
+					return;
+				try {
+					get();
+				} catch (InterruptedException | ExecutionException e) {
+					JOptionPane.showMessageDialog(null, e.getLocalizedMessage());
+				}
+			}
+		};
+		movieLoader.execute();
+	}
+
 	private void userIdForTextFieldKeyPressed(KeyEvent evt) {
 		if (evt.getKeyCode() == KeyEvent.VK_ESCAPE) {
 			resetRentalActionForm(null);
@@ -1401,7 +1457,7 @@ public class MovieRentalApplicationGui extends JFrame {
 		case 0:
 			// Rent Movie Tab
 			// set new model with new data
-			movieTable.setModel(new DefaultTableModel(mappers.getMovieListAsObject(false),
+			movieTable.setModel(new DefaultTableModel(new Object[][] {},
 					new String[] { "Movie ID", "Title", "Release Date", "Is Rented?", "Price Category" }) {
 				private static final long serialVersionUID = 2456659513544091063L;
 				private Class<?>[] types = new Class[] { java.lang.Long.class, java.lang.String.class,
@@ -1416,6 +1472,7 @@ public class MovieRentalApplicationGui extends JFrame {
 					return canEdit[columnIndex];
 				}
 			});
+			loadMovies((DefaultTableModel) movieTable.getModel(), MovieFilter.rented(false));
 
 			lastNameTextField.setEditable(true);
 			lastNameTextField.setText("");
@@ -1439,7 +1496,7 @@ public class MovieRentalApplicationGui extends JFrame {
 		case 1:
 			// Movies Tab
 			// set new model with new data
-			movieCRUDTable.setModel(new DefaultTableModel(mappers.getMovieListAsObject(),
+			movieCRUDTable.setModel(new DefaultTableModel(new Object[][] {},
 					new String[] { "Movie ID", "Title", "Release Date", "Is Rented?", "Price Category" }) {
 				private static final long serialVersionUID = -8807187529192958223L;
 				private Class<?>[] types = new Class[] { java.lang.Long.class, java.lang.String.class,
@@ -1454,6 +1511,7 @@ public class MovieRentalApplicationGui extends JFrame {
 					return canEdit[columnIndex];
 				}
 			});
+			loadMovies((DefaultTableModel) movieCRUDTable.getModel(), MovieFilter.ALL);
 
 			newMoviesButton.setEnabled(true);
 			editMoviesButton.setEnabled(false);
@@ -1615,10 +1673,13 @@ public class MovieRentalApplicationGui extends JFrame {
 				userId = Long.parseLong(userIdForTextField.getText());
 			}
 
-			// save rental in list
-			Long movieId = (Long) movieTable.getValueAt(movieTable.getSelectedRow(), 0);
+			// save rentals of all selected movies in list
+			List<Long> movieIds = new ArrayList<>();
+			for (int row : movieTable.getSelectedRows()) {
+				movieIds.add((Long) movieTable.getValueAt(row, 0));
+			}
 
-			services.createRental(movieId, userId, Integer.valueOf(rentalDays));
+			services.createRentals(movieIds, userId, Integer.valueOf(rentalDays));
 
 			mainPaneStateChanged(null);
 
@@ -1834,6 +1895,7 @@ public class MovieRentalApplicationGui extends JFrame {
 
 	public BusinessLogic services;
 	private MovieRentalMappers mappers;
+	private SwingWorker<Void, Object[]> movieLoader;
 
 	private boolean editMode = false;
 
@@ -5,6 +5,8 @@ import java.time.format.DateTimeFormatter;
 import java.util.LinkedList;
 import java.util.List;
 
+import ch.fhnw.edu.rental.persistence.MovieFilter;
+
 public class MovieRentalMappers {
 	
 	private BusinessLogic services;
@@ -26,23 +28,34 @@ public class MovieRentalMappers {
 		return users.toArray(new Object[][]{});
 	}
 
-	public Object[][] getMovieListAsObject(final boolean rented) {
+	public Object[][] getMovieListAsObject() {
 		final List<Object[]> movies = new LinkedList<Object[]>();
 		services.visitMovies(
 			new BusinessLogic.MovieVisitor() {
 				@Override
 				public void visit(Long id, String title, LocalDate releaseDate, boolean isRented, String priceCategory){
-					if(rented == isRented)
-						movies.add(new Object[]{id, title, releaseDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")), isRented, priceCategory});
+					movies.add(new Object[]{id, title, releaseDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")), isRented, priceCategory});
 				}
 			}
 		);
 		return movies.toArray(new Object[][]{});
 	}
 
-	public Object[][] getMovieListAsObject() {
+	/**
+	 * Returns the movies of one page, ordered by id. The first column holds the movie id,
+	 * which is used as {@code afterId} of the next page.
+	 */
+	public Object[][] getMoviePageAsObject(Long afterId, int limit) {
+		return getMoviePageAsObject(MovieFilter.ALL, afterId, limit);
+	}
+
+	/**
+	 * Returns one page of the movies matching the filter, like
+	 * {@link #getMoviePageAsObject(Long, int)}. The filter is applied by the query.
+	 */
+	public Object[][] getMoviePageAsObject(MovieFilter filter, Long afterId, int limit) {
 		final List<Object[]> movies = new LinkedList<Object[]>();
-		services.visitMovies(
+		services.visitMovies(filter, afterId, limit,
 			new BusinessLogic.MovieVisitor() {
 				@Override
 				public void visit(Long id, String title, LocalDate releaseDate, boolean isRented, String priceCategory){
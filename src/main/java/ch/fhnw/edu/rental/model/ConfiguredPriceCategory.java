@@ -0,0 +1,24 @@
+package ch.fhnw.edu.rental.model;
+
+/**
+ * A price category which is defined only by data: its name and its
+ * {@linkplain TariffRules tariff rules}, e.g. a promotion added to the database.
+ */
+public class ConfiguredPriceCategory extends PriceCategory {
+	private final String name;
+
+	public ConfiguredPriceCategory(String name, TariffRules rules) {
+		super(rules);
+		if(name == null || name.isEmpty()) throw new IllegalArgumentException("name must not be empty");
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
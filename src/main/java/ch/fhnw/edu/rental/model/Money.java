@@ -0,0 +1,31 @@
+package ch.fhnw.edu.rental.model;
+
+/**
+ * Amounts of money are represented as {@code long} cents, so charges can be added
+ * exactly and without allocating objects. This class converts such amounts for display.
+ */
+public final class Money {
+
+	public static final long CENTS_PER_UNIT = 100;
+
+	private Money() {
+	}
+
+	/** Returns the amount of whole units and cents in cents, e.g. {@code cents(1, 50)} is 150. */
+	public static long cents(long units, int cents) {
+		if(cents < 0 || cents >= CENTS_PER_UNIT) throw new IllegalArgumentException("cents must be in [0, 100)");
+		return units * CENTS_PER_UNIT + cents;
+	}
+
+	/** Returns the amount in units, e.g. 1.5 for 150 cents; only for display. */
+	public static double toDouble(long cents) {
+		return cents / (double) CENTS_PER_UNIT;
+	}
+
+	/** Formats the amount with two decimals, e.g. "-1.05" for -105 cents. */
+	public static String format(long cents) {
+		long abs = Math.abs(cents);
+		long fraction = abs % CENTS_PER_UNIT;
+		return (cents < 0 ? "-" : "") + abs / CENTS_PER_UNIT + (fraction < 10 ? ".0" : ".") + fraction;
+	}
+}
@@ -1,9 +1,17 @@
 package ch.fhnw.edu.rental.model;
 
 import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Set;
 
 public class Movie {
+	/**
+	 * The properties of a movie which can change after it was created.
+	 */
+	public enum Field { RENTED, PRICE_CATEGORY }
+
 	private Long id;
 	
 	private final String title;
@@ -11,6 +19,9 @@ public class Movie {
 	private boolean rented;
 	private PriceCategory priceCategory;
 
+	/** The fields changed since {@link #markClean()}, null if the movie is not tracked. */
+	private EnumSet<Field> dirty;
+
 	public static Movie of(String title, LocalDate releaseDate, PriceCategory priceCategory) {
 	    return new Movie(null, title, releaseDate, false, priceCategory);
     }
@@ -39,7 +50,10 @@ public class Movie {
 	}
 
 	public void setPriceCategory(PriceCategory priceCategory) {
-		this.priceCategory = priceCategory;
+		if (priceCategory != this.priceCategory) {
+			this.priceCategory = priceCategory;
+			changed(Field.PRICE_CATEGORY);
+		}
 	}
 
 	public String getTitle() {
@@ -55,7 +69,10 @@ public class Movie {
 	}
 
 	public void setRented(boolean rented) {
-		this.rented = rented;
+		if (rented != this.rented) {
+			this.rented = rented;
+			changed(Field.RENTED);
+		}
 	}
 
 	public Long getId() {
@@ -66,19 +83,48 @@ public class Movie {
 		this.id = id;
 	}
 
+	private void changed(Field field) {
+		if (dirty != null) {
+			dirty.add(field);
+		}
+	}
+
+	/**
+	 * Starts tracking changes, or forgets the changes tracked so far. Called by the
+	 * repositories once the state of the movie matches the stored one.
+	 */
+	public void markClean() {
+		dirty = EnumSet.noneOf(Field.class);
+	}
+
+	/**
+	 * Returns whether the changes of this movie are tracked, i.e. whether it was loaded
+	 * or saved by a repository. Changes of an untracked movie are unknown.
+	 */
+	public boolean isTracked() {
+		return dirty != null;
+	}
+
+	/**
+	 * Returns the fields changed since the movie was loaded or saved; empty if the movie
+	 * is not tracked.
+	 */
+	public Set<Field> getDirtyFields() {
+		return dirty == null ? Collections.<Field>emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(dirty));
+	}
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Movie movie = (Movie) o;
-        return rented == movie.rented &&
-            Objects.equals(id, movie.id) &&
+        return Objects.equals(id, movie.id) &&
             Objects.equals(title, movie.title);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, title, rented);
+        return Objects.hash(id, title);
     }
 
     @Override
@@ -1,8 +1,22 @@
 package ch.fhnw.edu.rental.model;
 
 
+/**
+ * A price category charges rentals by its {@linkplain TariffRules tariff rules}. The
+ * rules are stored with the category, so the subclasses only name the known categories
+ * and provide their default rules.
+ */
 public abstract class PriceCategory {
 	private Long id;
+	private final TariffRules rules;
+
+	/** The precomputed charges and points, null until {@link #precompute(int)} is called. */
+	private Tariff tariff;
+
+	protected PriceCategory(TariffRules rules) {
+		if(rules == null) throw new IllegalArgumentException();
+		this.rules = rules;
+	}
 
 	public Long getId() {
 		return id;
@@ -12,9 +26,73 @@ public abstract class PriceCategory {
 		this.id = id;
 	}
 
-	public abstract double getCharge(int daysRented);
+	public TariffRules getRules() {
+		return rules;
+	}
+
+	/**
+	 * Precomputes the charges and frequent renter points for up to {@code maxDays} rental
+	 * days, so that they are looked up instead of computed. Called by the repositories
+	 * once per loaded category; the table is then shared by all users of the instance.
+	 */
+	public void precompute(int maxDays) {
+		if(maxDays < 0) throw new IllegalArgumentException("maxDays must be >= 0");
+		long[] charges = new long[maxDays + 1];
+		int[] points = new int[maxDays + 1];
+		for (int days = 0; days <= maxDays; days++) {
+			charges[days] = computeChargeCents(days);
+			points[days] = computeFrequentRenterPoints(days);
+		}
+		tariff = new Tariff(charges, points);
+	}
+
+	/**
+	 * Returns the charge for the given rental days in {@linkplain Money cents}. Looked up
+	 * in the precomputed table, computed beyond it.
+	 */
+	public final long getChargeCents(int daysRented) {
+		Tariff t = tariff;
+		if (t != null && daysRented >= 0 && daysRented < t.charges.length) {
+			return t.charges[daysRented];
+		}
+		return computeChargeCents(daysRented);
+	}
+
+	/**
+	 * Returns the charge in units, for display. Sums must be built from
+	 * {@link #getChargeCents(int)}.
+	 */
+	public double getCharge(int daysRented) {
+		return Money.toDouble(getChargeCents(daysRented));
+	}
+
+	public final int getFrequentRenterPoints(int daysRented) {
+		Tariff t = tariff;
+		if (t != null && daysRented >= 0 && daysRented < t.points.length) {
+			return t.points[daysRented];
+		}
+		return computeFrequentRenterPoints(daysRented);
+	}
+
+	private long computeChargeCents(int daysRented) {
+		return rules.chargeCents(daysRented);
+	}
+
+	private int computeFrequentRenterPoints(int daysRented) {
+		return rules.points(daysRented);
+	}
+
+	/**
+	 * Charges and points indexed by rental days; the final fields make a tariff visible
+	 * to other threads only completely initialized.
+	 */
+	private static final class Tariff {
+		final long[] charges;
+		final int[] points;
 
-	public int getFrequentRenterPoints(int daysRented) {
-		return 1;
+		Tariff(long[] charges, int[] points) {
+			this.charges = charges;
+			this.points = points;
+		}
 	}
 }
@@ -3,13 +3,12 @@ package ch.fhnw.edu.rental.model;
 
 public class PriceCategoryChildren extends PriceCategory {
 
-	@Override
-	public double getCharge(int daysRented) {
-		double result = 1.5;
-		if (daysRented > 3) {
-			result += (daysRented - 3) * 1.5;
-		}
-		return result;
+	public PriceCategoryChildren() {
+		this(TariffRules.CHILDREN);
+	}
+
+	public PriceCategoryChildren(TariffRules rules) {
+		super(rules);
 	}
 
 	@Override
@@ -10,6 +10,26 @@ public class Rental {
 	private User user;
 	private LocalDate rentalDate;
 	private int rentalDays;
+	/** The fee charged when the rental was saved, null until then. */
+	private Long chargedCents;
+
+	/**
+	 * Recreates an already persisted rental. In contrast to the public constructors the
+	 * rented state of the movie is neither checked nor changed and the rental is not added
+	 * to the rentals of the user.
+	 */
+	public static Rental of(Long id, User user, Movie movie, int rentalDays, LocalDate rentalDate) {
+		Rental rental = new Rental();
+		rental.id = id;
+		rental.user = user;
+		rental.movie = movie;
+		rental.rentalDays = rentalDays;
+		rental.rentalDate = rentalDate;
+		return rental;
+	}
+
+	private Rental() {
+	}
 	
 	public Rental(User user, Movie movie, int rentalDays) {
 		this(user, movie, rentalDays, LocalDate.now());
@@ -30,8 +50,42 @@ public class Rental {
 		this.rentalDate = rentalDate;
 	}
 	
+	/** Returns the fee in {@linkplain Money cents}. */
+	public long getRentalFeeCents() {
+		return movie.getPriceCategory().getChargeCents(rentalDays);
+	}
+
+	/** Returns the fee in units, for display. */
 	public double getRentalFee() {
-		return movie.getPriceCategory().getCharge(rentalDays);
+		return Money.toDouble(getRentalFeeCents());
+	}
+
+	/**
+	 * Returns the fee charged when the rental was saved in {@linkplain Money cents}, or
+	 * null if it is not saved yet or was stored without it. In contrast to
+	 * {@link #getRentalFeeCents()} it does not follow later tariff changes.
+	 */
+	public Long getChargedCents() {
+		return chargedCents;
+	}
+
+	public void setChargedCents(Long chargedCents) {
+		this.chargedCents = chargedCents;
+	}
+
+	/**
+	 * Fixes the charged fee at the current tariff unless it is fixed already, and
+	 * returns it. Called by the repositories when the rental is saved or given back.
+	 */
+	public long charge() {
+		if (chargedCents == null) {
+			chargedCents = getRentalFeeCents();
+		}
+		return chargedCents;
+	}
+
+	public int getFrequentRenterPoints() {
+		return movie.getPriceCategory().getFrequentRenterPoints(rentalDays);
 	}
 
 	public Long getId() {
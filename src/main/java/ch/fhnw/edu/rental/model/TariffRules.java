@@ -0,0 +1,102 @@
+package ch.fhnw.edu.rental.model;
+
+import java.util.Objects;
+
+/**
+ * The pricing rules of a price category, stored with the category so that tariffs can
+ * be changed without new code:
+ * <ul>
+ * <li>the charge is {@code baseCents} plus {@code dayCents} for every day beyond
+ * {@code includedDays},</li>
+ * <li>a rental earns {@code points}, plus {@code bonusPoints} if it lasts at least
+ * {@code bonusDays} days; a {@code bonusDays} of 0 disables the bonus.</li>
+ * </ul>
+ * The rules are evaluated with plain arithmetic on final fields; the
+ * {@linkplain PriceCategory#precompute(int) tariff table} of a category is built from
+ * them when the category is loaded.
+ */
+public final class TariffRules {
+
+	public static final TariffRules REGULAR = of(200, 2, 150, 1, 0, 0);
+	public static final TariffRules CHILDREN = of(150, 3, 150, 1, 0, 0);
+	public static final TariffRules NEW_RELEASE = of(0, 0, 300, 1, 2, 1);
+
+	private final long baseCents;
+	private final int includedDays;
+	private final long dayCents;
+	private final int points;
+	private final int bonusDays;
+	private final int bonusPoints;
+
+	private TariffRules(long baseCents, int includedDays, long dayCents, int points, int bonusDays, int bonusPoints) {
+		this.baseCents = baseCents;
+		this.includedDays = includedDays;
+		this.dayCents = dayCents;
+		this.points = points;
+		this.bonusDays = bonusDays;
+		this.bonusPoints = bonusPoints;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if a value is negative.
+	 */
+	public static TariffRules of(long baseCents, int includedDays, long dayCents, int points, int bonusDays, int bonusPoints) {
+		if(baseCents < 0 || includedDays < 0 || dayCents < 0 || points < 0 || bonusDays < 0 || bonusPoints < 0) {
+			throw new IllegalArgumentException("tariff values must not be negative");
+		}
+		return new TariffRules(baseCents, includedDays, dayCents, points, bonusDays, bonusPoints);
+	}
+
+	public long chargeCents(int daysRented) {
+		return baseCents + Math.max(0, daysRented - includedDays) * dayCents;
+	}
+
+	public int points(int daysRented) {
+		return bonusDays > 0 && daysRented >= bonusDays ? points + bonusPoints : points;
+	}
+
+	public long getBaseCents() {
+		return baseCents;
+	}
+
+	public int getIncludedDays() {
+		return includedDays;
+	}
+
+	public long getDayCents() {
+		return dayCents;
+	}
+
+	public int getPoints() {
+		return points;
+	}
+
+	public int getBonusDays() {
+		return bonusDays;
+	}
+
+	public int getBonusPoints() {
+		return bonusPoints;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		TariffRules rules = (TariffRules) o;
+		return baseCents == rules.baseCents && includedDays == rules.includedDays && dayCents == rules.dayCents
+			&& points == rules.points && bonusDays == rules.bonusDays && bonusPoints == rules.bonusPoints;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(baseCents, includedDays, dayCents, points, bonusDays, bonusPoints);
+	}
+
+	@Override
+	public String toString() {
+		return "TariffRules[base=" + Money.format(baseCents) + ", includedDays=" + includedDays
+			+ ", perDay=" + Money.format(dayCents) + ", points=" + points
+			+ ", bonusDays=" + bonusDays + ", bonusPoints=" + bonusPoints + "]";
+	}
+}
@@ -1,9 +1,18 @@
 package ch.fhnw.edu.rental.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 public class User {
+	/**
+	 * The properties of a user which are stored in its row.
+	 */
+	public enum Field { LAST_NAME, FIRST_NAME, EMAIL }
+
 	private Long id;
 
 	private String lastName;
@@ -11,6 +20,9 @@ public class User {
 	private String email;
 	private List<Rental> rentals;
 
+	/** The fields changed since {@link #markClean()}, null if the user is not tracked. */
+	private EnumSet<Field> dirty;
+
 	public User(String lastName, String firstName) {
 		this.lastName = lastName;
 		this.firstName = firstName;
@@ -30,7 +42,10 @@ public class User {
 	}
 
 	public void setLastName(String name) {
-		this.lastName = name;
+		if (!Objects.equals(name, this.lastName)) {
+			this.lastName = name;
+			changed(Field.LAST_NAME);
+		}
 	}
 
 	public String getFirstName() {
@@ -38,7 +53,10 @@ public class User {
 	}
 
 	public void setFirstName(String firstName) {
-		this.firstName = firstName;
+		if (!Objects.equals(firstName, this.firstName)) {
+			this.firstName = firstName;
+			changed(Field.FIRST_NAME);
+		}
 	}
 
 	public String getEmail() {
@@ -46,7 +64,40 @@ public class User {
 	}
 
 	public void setEmail(String email) {
-		this.email = email;
+		if (!Objects.equals(email, this.email)) {
+			this.email = email;
+			changed(Field.EMAIL);
+		}
+	}
+
+	private void changed(Field field) {
+		if (dirty != null) {
+			dirty.add(field);
+		}
+	}
+
+	/**
+	 * Starts tracking changes, or forgets the changes tracked so far. Called by the
+	 * repositories once the state of the user matches the stored one.
+	 */
+	public void markClean() {
+		dirty = EnumSet.noneOf(Field.class);
+	}
+
+	/**
+	 * Returns whether the changes of this user are tracked, i.e. whether it was loaded
+	 * or saved by a repository. Changes of an untracked user are unknown.
+	 */
+	public boolean isTracked() {
+		return dirty != null;
+	}
+
+	/**
+	 * Returns the fields changed since the user was loaded or saved; empty if the user
+	 * is not tracked.
+	 */
+	public Set<Field> getDirtyFields() {
+		return dirty == null ? Collections.<Field>emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(dirty));
 	}
 
 	public List<Rental> getRentals() {
@@ -57,12 +108,21 @@ public class User {
 		this.rentals = rentals;
 	}
 
-	public int getCharge() {
-		int result = 0;
+	/**
+	 * Returns the exact sum of the fees of all rentals in {@linkplain Money cents}.
+	 * Iterates the list, so that a shared copy-on-write list is read from a snapshot.
+	 */
+	public long getChargeCents() {
+		long result = 0;
 		for (Rental rental : rentals) {
-			result += rental.getMovie().getPriceCategory().getCharge(rental.getRentalDays());
+			result += rental.getRentalFeeCents();
 		}
 		return result;
 	}
 
+	/** Returns the sum of the fees in units, for display. */
+	public double getCharge() {
+		return Money.toDouble(getChargeCents());
+	}
+
 }
@@ -0,0 +1,58 @@
+package ch.fhnw.edu.rental.model;
+
+/**
+ * The running totals of a user: the charge of the rentals not yet returned in
+ * {@linkplain Money cents} and the frequent renter points earned over all rentals.
+ * Maintained incrementally when a movie is rented or given back, so that they are read
+ * with one row instead of being summed over the rentals.
+ * <p>
+ * A rental adds the fee {@linkplain Rental#getChargedCents() charged} when it is made and
+ * subtracts exactly this fee when it is given back, even if the tariff changed
+ * meanwhile; points are kept when a movie is given back.
+ */
+public final class UserBalance {
+
+	private final Long userId;
+	private final long chargeCents;
+	private final int frequentRenterPoints;
+
+	public UserBalance(Long userId, long chargeCents, int frequentRenterPoints) {
+		if(userId == null) throw new IllegalArgumentException();
+		this.userId = userId;
+		this.chargeCents = chargeCents;
+		this.frequentRenterPoints = frequentRenterPoints;
+	}
+
+	/** Returns the balance of a user who never rented a movie. */
+	public static UserBalance empty(Long userId) {
+		return new UserBalance(userId, 0, 0);
+	}
+
+	/** Returns a balance with the given amounts added. */
+	public UserBalance plus(long chargeCents, int frequentRenterPoints) {
+		return new UserBalance(userId, this.chargeCents + chargeCents, this.frequentRenterPoints + frequentRenterPoints);
+	}
+
+	public Long getUserId() {
+		return userId;
+	}
+
+	public long getChargeCents() {
+		return chargeCents;
+	}
+
+	/** Returns the charge in units, for display. */
+	public double getCharge() {
+		return Money.toDouble(chargeCents);
+	}
+
+	public int getFrequentRenterPoints() {
+		return frequentRenterPoints;
+	}
+
+	@Override
+	public String toString() {
+		return "UserBalance[user=" + userId + ", charge=" + Money.format(chargeCents)
+			+ ", points=" + frequentRenterPoints + "]";
+	}
+}
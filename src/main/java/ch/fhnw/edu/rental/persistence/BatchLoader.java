@@ -0,0 +1,77 @@
+package ch.fhnw.edu.rental.persistence;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Collects the ids of entities needed while a result set is mapped and resolves all of
+ * them with a single {@link Repository#findAllById(Iterable)} call.
+ * <p>
+ * {@link #load(Object)} only registers the id and returns a handle. The first
+ * {@link Supplier#get()} on any handle (or an explicit {@link #dispatch()}) loads all
+ * ids registered so far. A loader is meant to be used for one query and is not thread
+ * safe.
+ *
+ * @param <T> the entity type
+ * @param <ID> the id type of the entity
+ */
+public class BatchLoader<T, ID extends Serializable> {
+
+	private final Repository<T, ID> repository;
+	private final Function<? super T, ? extends ID> idOf;
+
+	private final Set<ID> pending = new LinkedHashSet<>();
+	private final Map<ID, T> loaded = new HashMap<>();
+
+	/**
+	 * @param repository the repository used to resolve the ids
+	 * @param idOf returns the id of a loaded entity
+	 */
+	public BatchLoader(Repository<T, ID> repository, Function<? super T, ? extends ID> idOf) {
+		this.repository = repository;
+		this.idOf = idOf;
+	}
+
+	/**
+	 * Registers the given id for the next batch.
+	 *
+	 * @param id must not be null.
+	 * @return a handle which returns the entity once the batch has been loaded.
+	 * @throws IllegalArgumentException if id is null
+	 */
+	public Supplier<T> load(ID id) {
+		if (id == null) throw new IllegalArgumentException();
+		if (!loaded.containsKey(id)) {
+			pending.add(id);
+		}
+		return () -> {
+			if (pending.contains(id)) {
+				dispatch();
+			}
+			T entity = loaded.get(id);
+			if (entity == null) {
+				throw new IllegalStateException("No entity found with id " + id);
+			}
+			return entity;
+		};
+	}
+
+	/**
+	 * Loads all pending ids with one repository call.
+	 */
+	public void dispatch() {
+		if (pending.isEmpty()) {
+			return;
+		}
+		for (T entity : repository.findAllById(new ArrayList<>(pending))) {
+			loaded.put(idOf.apply(entity), entity);
+		}
+		pending.clear();
+	}
+}
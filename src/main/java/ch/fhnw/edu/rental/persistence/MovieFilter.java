@@ -0,0 +1,135 @@
+package ch.fhnw.edu.rental.persistence;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+import ch.fhnw.edu.rental.model.PriceCategory;
+
+/**
+ * Restricts the movies of a {@linkplain MovieRepository#forEachRow row query}. Every
+ * condition is optional and all conditions which are set must hold. The SQL repository
+ * translates the filter into the where clause of its query, so the store only returns
+ * the matching rows.
+ * <p>
+ * A filter is immutable; the {@code with} methods return a new filter.
+ */
+public final class MovieFilter {
+
+	/** Matches every movie. */
+	public static final MovieFilter ALL = new MovieFilter(null, null, null, null, null);
+
+	private final Boolean rented;
+	private final PriceCategory priceCategory;
+	private final String titlePrefix;
+	private final LocalDate releasedFrom;
+	private final LocalDate releasedUntil;
+
+	private MovieFilter(Boolean rented, PriceCategory priceCategory, String titlePrefix,
+	                    LocalDate releasedFrom, LocalDate releasedUntil) {
+		this.rented = rented;
+		this.priceCategory = priceCategory;
+		this.titlePrefix = titlePrefix;
+		this.releasedFrom = releasedFrom;
+		this.releasedUntil = releasedUntil;
+	}
+
+	/** Matches the rented or the available movies. */
+	public static MovieFilter rented(boolean rented) {
+		return ALL.withRented(rented);
+	}
+
+	public MovieFilter withRented(boolean rented) {
+		return new MovieFilter(rented, priceCategory, titlePrefix, releasedFrom, releasedUntil);
+	}
+
+	/**
+	 * @param priceCategory must be a stored price category.
+	 * @throws IllegalArgumentException if the price category or its id is null.
+	 */
+	public MovieFilter withPriceCategory(PriceCategory priceCategory) {
+		if(priceCategory == null || priceCategory.getId() == null) throw new IllegalArgumentException();
+		return new MovieFilter(rented, priceCategory, titlePrefix, releasedFrom, releasedUntil);
+	}
+
+	/**
+	 * Matches the movies whose title starts with the given prefix; case matters.
+	 *
+	 * @throws IllegalArgumentException if the prefix is null or empty.
+	 */
+	public MovieFilter withTitlePrefix(String titlePrefix) {
+		if(titlePrefix == null || titlePrefix.isEmpty()) throw new IllegalArgumentException("No empty prefix");
+		return new MovieFilter(rented, priceCategory, titlePrefix, releasedFrom, releasedUntil);
+	}
+
+	/**
+	 * Matches the movies released between the given dates, both inclusive. A null date
+	 * leaves that end of the range open.
+	 *
+	 * @throws IllegalArgumentException if {@code from} is after {@code until}.
+	 */
+	public MovieFilter withReleaseDate(LocalDate from, LocalDate until) {
+		if(from != null && until != null && from.isAfter(until)) throw new IllegalArgumentException("from is after until");
+		return new MovieFilter(rented, priceCategory, titlePrefix, from, until);
+	}
+
+	/** Returns the required rented state, or null if any. */
+	public Boolean getRented() {
+		return rented;
+	}
+
+	/** Returns the required price category, or null if any. */
+	public PriceCategory getPriceCategory() {
+		return priceCategory;
+	}
+
+	/** Returns the required title prefix, or null if any. */
+	public String getTitlePrefix() {
+		return titlePrefix;
+	}
+
+	/** Returns the first release date, or null if open. */
+	public LocalDate getReleasedFrom() {
+		return releasedFrom;
+	}
+
+	/** Returns the last release date, or null if open. */
+	public LocalDate getReleasedUntil() {
+		return releasedUntil;
+	}
+
+	/**
+	 * Returns whether a movie with the given values matches the filter. Price categories
+	 * are compared by id.
+	 */
+	public boolean matches(String title, LocalDate releaseDate, boolean rented, PriceCategory priceCategory) {
+		return (this.rented == null || this.rented == rented)
+			&& (this.priceCategory == null || this.priceCategory.getId().equals(priceCategory.getId()))
+			&& (titlePrefix == null || title.startsWith(titlePrefix))
+			&& (releasedFrom == null || !releaseDate.isBefore(releasedFrom))
+			&& (releasedUntil == null || !releaseDate.isAfter(releasedUntil));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		MovieFilter filter = (MovieFilter) o;
+		return Objects.equals(rented, filter.rented)
+			&& Objects.equals(priceCategory == null ? null : priceCategory.getId(),
+			                  filter.priceCategory == null ? null : filter.priceCategory.getId())
+			&& Objects.equals(titlePrefix, filter.titlePrefix)
+			&& Objects.equals(releasedFrom, filter.releasedFrom)
+			&& Objects.equals(releasedUntil, filter.releasedUntil);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(rented, priceCategory == null ? null : priceCategory.getId(), titlePrefix, releasedFrom, releasedUntil);
+	}
+
+	@Override
+	public String toString() {
+		return "MovieFilter[rented=" + rented + ", priceCategory=" + priceCategory + ", titlePrefix=" + titlePrefix
+			+ ", released=" + releasedFrom + ".." + releasedUntil + "]";
+	}
+}
@@ -1,9 +1,55 @@
 package ch.fhnw.edu.rental.persistence;
 
+import java.time.LocalDate;
 import java.util.List;
 
 import ch.fhnw.edu.rental.model.Movie;
+import ch.fhnw.edu.rental.model.PriceCategory;
 
 public interface MovieRepository extends Repository<Movie, Long> {
 	List<Movie> findByTitle(String title);
+
+	/**
+	 * Marks the movie with the given id as rented if it is not rented yet. The check and
+	 * the change are one atomic operation of the store, so of several concurrent callers
+	 * exactly one succeeds. Movie instances already loaded are not changed.
+	 * 
+	 * @param id must not be null.
+	 * @return true if the movie was available and is now rented, false if it is rented
+	 *         already or does not exist
+	 * @throws IllegalArgumentException if id is null.
+	 */
+	boolean claim(Long id);
+
+	/**
+	 * Marks the movie with the given id as available again. Movie instances already
+	 * loaded are not changed.
+	 * 
+	 * @param id must not be null.
+	 * @return true if the movie was rented, false if it was available already or does not
+	 *         exist
+	 * @throws IllegalArgumentException if id is null.
+	 */
+	boolean release(Long id);
+
+	/**
+	 * Receives the columns of one movie without creating a {@link Movie}. The price
+	 * category is the shared instance of the price category repository.
+	 */
+	interface MovieRow {
+		void accept(long id, String title, LocalDate releaseDate, boolean rented, PriceCategory priceCategory);
+	}
+
+	/**
+	 * Passes at most {@code limit} movies matching the filter with an id greater than
+	 * {@code afterId}, ordered by id, to the given action. Only the needed columns are
+	 * read and no entities are created.
+	 * 
+	 * @param filter must not be null, {@link MovieFilter#ALL} for all movies.
+	 * @param afterId the id of the last movie of the previous page, or null to start with the first movie
+	 * @param limit the maximum number of movies, must be positive.
+	 * @param action must not be null.
+	 * @throws IllegalArgumentException if limit is not positive, filter or action is null.
+	 */
+	void forEachRow(MovieFilter filter, Long afterId, int limit, MovieRow action);
 }
@@ -1,6 +1,17 @@
 package ch.fhnw.edu.rental.persistence;
 
+import java.util.Optional;
+
 import ch.fhnw.edu.rental.model.PriceCategory;
 
 public interface PriceCategoryRepository extends Repository<PriceCategory, Long> {
+	/**
+	 * Retrieves a price category by its type name (e.g. NewRelease) or by its display
+	 * name (e.g. New Release).
+	 *
+	 * @param name must not be null.
+	 * @return the price category with the given name
+	 * @throws IllegalArgumentException if name is null.
+	 */
+	Optional<PriceCategory> findByName(String name);
 }
@@ -0,0 +1,79 @@
+package ch.fhnw.edu.rental.persistence;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * The rentals as primitive columns: row {@code i} of every column belongs to the same
+ * rental. Loaded by {@link RentalRepository#loadColumns()} for bulk computations which
+ * would otherwise walk rental, movie and price category objects one by one.
+ * <p>
+ * The rows are ordered by user id, so the rentals of one user form a contiguous range.
+ */
+public final class RentalColumns {
+
+	private int size;
+	private long[] userIds;
+	private long[] movieIds;
+	private long[] priceCategoryIds;
+	private int[] rentalDays;
+	private long[] rentalEpochDays;
+
+	public RentalColumns(int capacity) {
+		if(capacity < 0) throw new IllegalArgumentException("capacity must be >= 0");
+		userIds = new long[capacity];
+		movieIds = new long[capacity];
+		priceCategoryIds = new long[capacity];
+		rentalDays = new int[capacity];
+		rentalEpochDays = new long[capacity];
+	}
+
+	/**
+	 * Appends a row; the user id must not be smaller than the one of the previous row.
+	 *
+	 * @throws IllegalArgumentException if the rows are not ordered by user id.
+	 */
+	public void add(long userId, long movieId, long priceCategoryId, int days, LocalDate rentalDate) {
+		if(size > 0 && userId < userIds[size - 1]) throw new IllegalArgumentException("rows must be ordered by user id");
+		if (size == userIds.length) {
+			int capacity = Math.max(16, size * 2);
+			userIds = Arrays.copyOf(userIds, capacity);
+			movieIds = Arrays.copyOf(movieIds, capacity);
+			priceCategoryIds = Arrays.copyOf(priceCategoryIds, capacity);
+			rentalDays = Arrays.copyOf(rentalDays, capacity);
+			rentalEpochDays = Arrays.copyOf(rentalEpochDays, capacity);
+		}
+		userIds[size] = userId;
+		movieIds[size] = movieId;
+		priceCategoryIds[size] = priceCategoryId;
+		rentalDays[size] = days;
+		rentalEpochDays[size] = rentalDate.toEpochDay();
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// the columns are returned without copying; only the first size() entries are valid
+
+	public long[] userIds() {
+		return userIds;
+	}
+
+	public long[] movieIds() {
+		return movieIds;
+	}
+
+	public long[] priceCategoryIds() {
+		return priceCategoryIds;
+	}
+
+	public int[] rentalDays() {
+		return rentalDays;
+	}
+
+	public long[] rentalEpochDays() {
+		return rentalEpochDays;
+	}
+}
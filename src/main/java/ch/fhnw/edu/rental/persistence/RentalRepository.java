@@ -1,10 +1,134 @@
 package ch.fhnw.edu.rental.persistence;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
 
+import ch.fhnw.edu.rental.model.PriceCategory;
 import ch.fhnw.edu.rental.model.Rental;
 import ch.fhnw.edu.rental.model.User;
 
+/**
+ * Only {@link #rent}, {@link #rentAll} and the {@code giveBack} methods maintain the
+ * {@linkplain ch.fhnw.edu.rental.model.UserBalance balances} of the users; the plain
+ * {@code save} and {@code delete} methods do not.
+ */
 public interface RentalRepository extends Repository<Rental, Long> {
 	List<Rental> findByUser(User user);
+
+	/**
+	 * Returns the number of rentals of the user with the given id without loading them.
+	 * 
+	 * @param userId must not be null.
+	 * @throws IllegalArgumentException if userId is null.
+	 */
+	long countByUserId(Long userId);
+
+	/**
+	 * Returns the id of the movie of the rental with the given id without loading the
+	 * rental.
+	 * 
+	 * @param id must not be null.
+	 * @return the id of the movie, or empty if the rental does not exist
+	 * @throws IllegalArgumentException if id is null.
+	 */
+	Optional<Long> findMovieIdByRentalId(Long id);
+
+	/**
+	 * Claims the movie of the given rental like {@link MovieRepository#claim}, inserts
+	 * the rental and adds its fee and frequent renter points to the balance of its user,
+	 * all with one access to the store. If the movie is rented already, nothing is
+	 * written. Movie instances already loaded are not changed; the rental is added to the
+	 * rentals of its user only if they are loaded already.
+	 * 
+	 * @param rental must not be null.
+	 * @return the saved rental, or empty if the movie is rented already
+	 * @throws IllegalArgumentException if rental is null.
+	 */
+	Optional<Rental> rent(Rental rental);
+
+	/**
+	 * Claims the movies of all given rentals and inserts the rentals, all or nothing. The
+	 * availability of all movies is checked with one query, the movies are claimed with
+	 * one update and the rentals are inserted with one batch; their fees and points are
+	 * added to the balances of their users. Must be called within a transaction. Movie
+	 * instances already loaded are not changed; the rentals are added to loaded rental
+	 * lists like in {@link #rent}.
+	 * 
+	 * @param rentals must not be null and must refer to different movies.
+	 * @return true if the rentals were saved, false if one of the movies is rented
+	 *         already, in which case nothing is written
+	 * @throws IllegalArgumentException if rentals is null.
+	 */
+	boolean rentAll(List<Rental> rentals);
+
+	/**
+	 * Deletes the given rental, releases its movie like {@link MovieRepository#release}
+	 * and subtracts its fee from the balance of its user, all with one access to the
+	 * store. The frequent renter points are kept.
+	 * 
+	 * @param rental must not be null.
+	 * @return true if the rental existed
+	 * @throws IllegalArgumentException if rental is null.
+	 */
+	boolean giveBack(Rental rental);
+
+	/**
+	 * Deletes the rental with the given id, releases its movie and updates the balance
+	 * like {@link #giveBack}, without loading the rental or its owner. A loaded instance of the rental is discarded and a loaded
+	 * instance of the movie is marked as available.
+	 * 
+	 * @param id must not be null.
+	 * @return true if the rental existed
+	 * @throws IllegalArgumentException if id is null.
+	 */
+	boolean giveBackById(Long id);
+
+	/**
+	 * Deletes the rental of the movie with the given id and releases the movie, like
+	 * {@link #giveBackById}.
+	 * 
+	 * @param movieId must not be null.
+	 * @return true if the movie was rented
+	 * @throws IllegalArgumentException if movieId is null.
+	 */
+	boolean giveBackByMovieId(Long movieId);
+
+	/**
+	 * Receives the columns of one rental together with the names of its user and the
+	 * title and price category of its movie, without creating any entity. The price
+	 * category is the shared instance of the price category repository.
+	 */
+	interface RentalRow {
+		void accept(long id, int rentalDays, LocalDate rentalDate, String lastName, String firstName,
+		            String movieTitle, PriceCategory priceCategory);
+	}
+
+	/**
+	 * Passes at most {@code limit} rentals with an id greater than {@code afterId},
+	 * ordered by id, to the given action. Rentals, users and movies are read with one
+	 * query over the needed columns only.
+	 * 
+	 * @param afterId the id of the last rental of the previous page, or null to start with the first rental
+	 * @param limit the maximum number of rentals, must be positive.
+	 * @param action must not be null.
+	 * @throws IllegalArgumentException if limit is not positive or action is null.
+	 */
+	void forEachRow(Long afterId, int limit, RentalRow action);
+
+	/**
+	 * Passes the rentals of the user with the given id, ordered by id, to the given
+	 * action like {@link #forEachRow(Long, int, RentalRow)}.
+	 * 
+	 * @param userId must not be null.
+	 * @param action must not be null.
+	 * @throws IllegalArgumentException if userId or action is null.
+	 */
+	void forEachRowOfUser(Long userId, RentalRow action);
+
+	/**
+	 * Loads all rentals into primitive columns, ordered by user id and rental id. No
+	 * entities are created.
+	 */
+	RentalColumns loadColumns();
 }
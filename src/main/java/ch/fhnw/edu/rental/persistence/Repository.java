@@ -3,6 +3,7 @@ package ch.fhnw.edu.rental.persistence;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface Repository<T, ID extends Serializable> {
 	/**
@@ -21,6 +22,43 @@ public interface Repository<T, ID extends Serializable> {
 	 */
 	List<T> findAll();
 
+	/**
+	 * Passes all instances of the type to the given action while they are read from a
+	 * forward-only cursor, without collecting them in a list first. The instances are not
+	 * registered with the current unit of work.
+	 * 
+	 * @param action must not be null.
+	 * @throws IllegalArgumentException if action is null
+	 */
+	void forEach(Consumer<? super T> action);
+
+	/**
+	 * Returns all instances of the type with the given ids. Ids for which no entity
+	 * exists are ignored; the order of the result is not specified.
+	 * 
+	 * @param ids must not be null.
+	 * @return the entities with the given ids
+	 * @throws IllegalArgumentException if ids is null
+	 */
+	List<T> findAllById(Iterable<ID> ids);
+
+	/**
+	 * Returns the next page of entities in the given sort order, starting after the
+	 * entity {@code after} (keyset pagination). The position is defined by the sort key
+	 * and id of that entity, so the cost of a page does not depend on how many pages
+	 * were read before, and the entity may have been deleted meanwhile. Null sorts
+	 * before all values.
+	 * 
+	 * @param after the last entity of the previous page, or null for the first page
+	 * @param limit the maximum number of entities, must be positive.
+	 * @param sort must not be null.
+	 * @return the entities of the page, in sort order; fewer than {@code limit} entities
+	 *         indicate the last page
+	 * @throws IllegalArgumentException if limit is not positive, sort is null or its
+	 *         property is not supported
+	 */
+	List<T> findPage(T after, int limit, Sort sort);
+
 	/**
 	 * Saves a given entity. Use the returned instance for further operations as the
 	 * save operation might have changed the entity instance completely.
@@ -31,12 +69,32 @@ public interface Repository<T, ID extends Serializable> {
 	T save(T t);
 
 	/**
-	 * Deletes the entity with the given id.
+	 * Saves all given entities with one batch per statement type. Use the returned
+	 * instances for further operations.
+	 * 
+	 * @param entities must not be null.
+	 * @return the saved entities in the order of the given entities
+	 * @throws IllegalArgumentException in case the given entities are null
+	 */
+	List<T> saveAll(Iterable<T> entities);
+
+	/**
+	 * Deletes the entity with the given id with a single statement, without loading it.
 	 * 
 	 * @param id must not be {@literal null}.
+	 * @return true if an entity with the given id existed, false otherwise
 	 * @throws IllegalArgumentException in case the given id is null
 	 */
-	void deleteById(ID id);
+	boolean deleteById(ID id);
+
+	/**
+	 * Deletes the entities with the given ids with one batch. Ids for which no entity
+	 * exists are ignored.
+	 * 
+	 * @param ids must not be null.
+	 * @throws IllegalArgumentException in case the given ids are null
+	 */
+	void deleteAllById(Iterable<ID> ids);
 
 	/**
 	 * Deletes a given entity.
@@ -47,7 +105,7 @@ public interface Repository<T, ID extends Serializable> {
 	void delete(T entity);
 
 	/**
-	 * Returns whether an entity with the given id exists.
+	 * Returns whether an entity with the given id exists. The entity is not loaded.
 	 * 
 	 * @param id must not be null.
 	 * @return true if an entity with the given id exists, false otherwise
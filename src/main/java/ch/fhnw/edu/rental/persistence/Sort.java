@@ -0,0 +1,65 @@
+package ch.fhnw.edu.rental.persistence;
+
+import java.util.Objects;
+
+/**
+ * Sort order of a {@linkplain Repository#findPage page}. The entity id is always used
+ * as the last sort key, so the order is total even if the property is not unique.
+ * <p>
+ * The supported properties depend on the repository; an unknown property is rejected
+ * with an {@link IllegalArgumentException}. Every repository supports {@code id}.
+ */
+public final class Sort {
+
+	public enum Direction { ASC, DESC }
+
+	/** Ascending by id. */
+	public static final Sort BY_ID = by("id");
+
+	private final String property;
+	private final Direction direction;
+
+	private Sort(String property, Direction direction) {
+		if(property == null || direction == null) throw new IllegalArgumentException();
+		this.property = property;
+		this.direction = direction;
+	}
+
+	public static Sort by(String property) {
+		return new Sort(property, Direction.ASC);
+	}
+
+	public static Sort by(String property, Direction direction) {
+		return new Sort(property, direction);
+	}
+
+	public String getProperty() {
+		return property;
+	}
+
+	public Direction getDirection() {
+		return direction;
+	}
+
+	public boolean isAscending() {
+		return direction == Direction.ASC;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		Sort sort = (Sort) o;
+		return property.equals(sort.property) && direction == sort.direction;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(property, direction);
+	}
+
+	@Override
+	public String toString() {
+		return property + " " + direction;
+	}
+}
@@ -1,11 +1,52 @@
 package ch.fhnw.edu.rental.persistence;
 
 import java.util.List;
+import java.util.Optional;
 
 import ch.fhnw.edu.rental.model.User;
+import ch.fhnw.edu.rental.model.UserBalance;
 
 public interface UserRepository extends Repository<User, Long> {
 	List<User> findByLastName(String lastName);
 	List<User> findByFirstName(String firstName);
 	List<User> findByEmail(String email);
+
+	/**
+	 * Retrieves the user with the given email address. Email addresses are unique.
+	 * 
+	 * @param email must not be null or empty.
+	 * @return the user with the given email address
+	 * @throws IllegalArgumentException if email is null or empty.
+	 */
+	Optional<User> findOneByEmail(String email);
+
+	/**
+	 * Retrieves the running totals of the user with the given id with one row, without
+	 * loading the user or its rentals. A user who never rented a movie has an empty
+	 * balance.
+	 * 
+	 * @param userId must not be null.
+	 * @return the balance of the user, or empty if the user does not exist
+	 * @throws IllegalArgumentException if userId is null.
+	 */
+	Optional<UserBalance> findBalance(Long userId);
+
+	/**
+	 * Receives the columns of one user without creating a {@link User}.
+	 */
+	interface UserRow {
+		void accept(long id, String lastName, String firstName);
+	}
+
+	/**
+	 * Passes the names of at most {@code limit} users with an id greater than
+	 * {@code afterId}, ordered by id, to the given action. Only the needed columns are
+	 * read and no entities are created.
+	 * 
+	 * @param afterId the id of the last user of the previous page, or null to start with the first user
+	 * @param limit the maximum number of users, must be positive.
+	 * @param action must not be null.
+	 * @throws IllegalArgumentException if limit is not positive or action is null.
+	 */
+	void forEachRow(Long afterId, int limit, UserRow action);
 }
@@ -0,0 +1,110 @@
+package ch.fhnw.edu.rental.persistence.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Unit-of-work scoped identity map which guarantees one entity instance per (type, id).
+ * <p>
+ * The map returned by {@link #current()} is bound to the current transaction, i.e. to
+ * the current service call, and is shared by all repositories. Outside of a transaction
+ * a fresh map is returned on every call, so nothing is shared.
+ */
+final class IdentityMap {
+
+    private final Map<Class<?>, Map<Object, Object>> entities = new HashMap<>();
+
+    private IdentityMap() {
+    }
+
+    /**
+     * Returns the identity map of the current transaction.
+     */
+    static IdentityMap current() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return new IdentityMap();
+        }
+        IdentityMap map = (IdentityMap) TransactionSynchronizationManager.getResource(IdentityMap.class);
+        if (map == null) {
+            IdentityMap scoped = new IdentityMap();
+            TransactionSynchronizationManager.bindResource(IdentityMap.class, scoped);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void suspend() {
+                    TransactionSynchronizationManager.unbindResource(IdentityMap.class);
+                }
+
+                @Override
+                public void resume() {
+                    TransactionSynchronizationManager.bindResource(IdentityMap.class, scoped);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(IdentityMap.class);
+                }
+            });
+            map = scoped;
+        }
+        return map;
+    }
+
+    /**
+     * Returns the registered instance of the given type and id or null.
+     */
+    <T> T get(Class<T> type, Object id) {
+        Map<Object, Object> byId = entities.get(type);
+        return byId == null ? null : type.cast(byId.get(id));
+    }
+
+    /**
+     * Registers the given entity, replacing a previously registered instance with the same id.
+     */
+    <T> T put(Class<T> type, Object id, T entity) {
+        if (id != null) {
+            entities.computeIfAbsent(type, t -> new HashMap<>()).put(id, entity);
+        }
+        return entity;
+    }
+
+    /**
+     * Adds the registered instances for the given ids to {@code found} and returns the
+     * ids which are not registered.
+     */
+    <T, ID> List<ID> resolve(Class<T> type, Iterable<ID> ids, Collection<? super T> found) {
+        List<ID> missing = new ArrayList<>();
+        for (ID id : ids) {
+            T entity = get(type, id);
+            if (entity != null) {
+                found.add(entity);
+            } else {
+                missing.add(id);
+            }
+        }
+        return missing;
+    }
+
+    void remove(Class<?> type, Object id) {
+        Map<Object, Object> byId = entities.get(type);
+        if (byId != null && id != null) {
+            byId.remove(id);
+        }
+    }
+
+    /**
+     * Removes all registered instances of the given type matching the filter.
+     */
+    <T> void removeIf(Class<T> type, Predicate<? super T> filter) {
+        Map<Object, Object> byId = entities.get(type);
+        if (byId != null) {
+            byId.values().removeIf(entity -> filter.test(type.cast(entity)));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ch.fhnw.edu.rental.persistence.impl;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * List which loads its elements on first access. After {@link #invalidate()} the
+ * elements are loaded again on the next access; repositories invalidate a list after
+ * writes which change its contents in the database.
+ *
+ * @param <E> the element type
+ */
+final class LazyList<E> extends AbstractList<E> {
+
+    private final Supplier<? extends List<E>> loader;
+    private List<E> elements;
+
+    LazyList(Supplier<? extends List<E>> loader) {
+        this.loader = loader;
+    }
+
+    private List<E> elements() {
+        if (elements == null) {
+            elements = new ArrayList<>(loader.get());
+        }
+        return elements;
+    }
+
+    boolean isLoaded() {
+        return elements != null;
+    }
+
+    void invalidate() {
+        elements = null;
+    }
+
+    /**
+     * Returns false if the given list is a lazy list which has not been loaded yet.
+     */
+    static boolean isLoaded(List<?> list) {
+        return !(list instanceof LazyList) || ((LazyList<?>) list).isLoaded();
+    }
+
+    /**
+     * Invalidates the given list if it is a lazy list.
+     */
+    static void invalidate(List<?> list) {
+        if (list instanceof LazyList) {
+            ((LazyList<?>) list).invalidate();
+        }
+    }
+
+    @Override
+    public E get(int index) {
+        return elements().get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements().size();
+    }
+
+    @Override
+    public E set(int index, E element) {
+        return elements().set(index, element);
+    }
+
+    @Override
+    public void add(int index, E element) {
+        elements().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public E remove(int index) {
+        modCount++;
+        return elements().remove(index);
+    }
+}
@@ -4,36 +4,67 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
-import java.time.Month;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
 
 import ch.fhnw.edu.rental.model.Movie;
+import ch.fhnw.edu.rental.model.PriceCategory;
+import ch.fhnw.edu.rental.persistence.BatchLoader;
+import ch.fhnw.edu.rental.persistence.MovieFilter;
 import ch.fhnw.edu.rental.persistence.MovieRepository;
 import ch.fhnw.edu.rental.persistence.PriceCategoryRepository;
+import ch.fhnw.edu.rental.persistence.Sort;
 
 @Component
+@Profile("!memory")
 public class MovieRepositoryImpl implements MovieRepository {
 
+    private static final Map<String, SeekQuery.Column<Movie>> SORT_COLUMNS = new HashMap<>();
+    static {
+        SORT_COLUMNS.put("id", new SeekQuery.Column<>("MOVIE_ID", Movie::getId));
+        SORT_COLUMNS.put("title", new SeekQuery.Column<>("MOVIE_TITLE", Movie::getTitle));
+        SORT_COLUMNS.put("releaseDate", new SeekQuery.Column<>("MOVIE_RELEASEDATE", Movie::getReleaseDate));
+    }
+
     private final JdbcTemplate jdbcTemplate;
     private final PriceCategoryRepository priceCategoryRepo;
+    private final int fetchSize;
 
-    public MovieRepositoryImpl(JdbcTemplate jdbcTemplate, PriceCategoryRepository priceCategoryRepo) {
+    public MovieRepositoryImpl(JdbcTemplate jdbcTemplate, PriceCategoryRepository priceCategoryRepo,
+                               @Value("${rental.jdbc.fetch-size:500}") int fetchSize) {
         this.jdbcTemplate = jdbcTemplate;
         this.priceCategoryRepo = priceCategoryRepo;
+        this.fetchSize = fetchSize;
     }
 
     @Override
     public Optional<Movie> findById(Long id) {
+        IdentityMap identityMap = IdentityMap.current();
+        Movie known = identityMap.get(Movie.class, id);
+        if (known != null) {
+            return Optional.of(known);
+        }
 
-        List<Movie> movies = jdbcTemplate.query(
+        List<Movie> movies = queryMovies(
+            identityMap,
             "select * from MOVIES where MOVIE_ID = ?",
-            (rs, row) -> createMovie(rs),
             id
         );
 
@@ -48,86 +79,289 @@ public class MovieRepositoryImpl implements MovieRepository {
 
     @Override
     public List<Movie> findAll() {
-        return jdbcTemplate.query(
-            "select * from MOVIES",
-            (rs, row) -> createMovie(rs)
+        return queryMovies(IdentityMap.current(), "select * from MOVIES");
+    }
+
+    @Override
+    public void forEach(Consumer<? super Movie> action) {
+        if (action == null) throw new IllegalArgumentException();
+        IdentityMap identityMap = IdentityMap.current();
+        jdbcTemplate.query(
+            SqlSupport.cursor("select * from MOVIES order by MOVIE_ID", fetchSize),
+            rs -> {
+                Movie known = identityMap.get(Movie.class, rs.getLong("MOVIE_ID"));
+                action.accept(known != null ? known : createMovie(rs, priceCategory(rs)));
+            }
+        );
+    }
+
+    @Override
+    public void forEachRow(MovieFilter filter, Long afterId, int limit, MovieRow action) {
+        if (filter == null || limit <= 0 || action == null) throw new IllegalArgumentException();
+        List<Object> args = new ArrayList<>();
+        String condition = condition(filter, args);
+        jdbcTemplate.query(
+            SqlSupport.pageCursor("select MOVIE_ID, MOVIE_TITLE, MOVIE_RELEASEDATE, MOVIE_RENTED, PRICECATEGORY_FK from MOVIES",
+                condition, args, "MOVIE_ID", afterId, limit, fetchSize),
+            rs -> {
+                action.accept(rs.getLong(1), rs.getString(2), rs.getDate(3).toLocalDate(), rs.getBoolean(4), priceCategory(rs));
+            }
         );
     }
 
+    /**
+     * Translates the filter into a where condition; every column it uses is indexed.
+     */
+    static String condition(MovieFilter filter, List<Object> args) {
+        List<String> conditions = new ArrayList<>();
+        if (filter.getRented() != null) {
+            conditions.add("MOVIE_RENTED = ?");
+            args.add(filter.getRented());
+        }
+        if (filter.getPriceCategory() != null) {
+            conditions.add("PRICECATEGORY_FK = ?");
+            args.add(filter.getPriceCategory().getId());
+        }
+        if (filter.getTitlePrefix() != null) {
+            // a constant prefix lets the store scan a range of the title index
+            conditions.add("MOVIE_TITLE like ? escape '\\'");
+            args.add(filter.getTitlePrefix().replaceAll("[\\\\%_]", "\\\\$0") + "%");
+        }
+        if (filter.getReleasedFrom() != null) {
+            conditions.add("MOVIE_RELEASEDATE >= ?");
+            args.add(java.sql.Date.valueOf(filter.getReleasedFrom()));
+        }
+        if (filter.getReleasedUntil() != null) {
+            // the column is a timestamp, so the whole last day is included
+            conditions.add("MOVIE_RELEASEDATE < ?");
+            args.add(java.sql.Date.valueOf(filter.getReleasedUntil().plusDays(1)));
+        }
+        return String.join(" and ", conditions);
+    }
+
+    private PriceCategory priceCategory(ResultSet rs) throws SQLException {
+        long id = rs.getLong("PRICECATEGORY_FK");
+        return priceCategoryRepo.findById(id)
+            .orElseThrow(() -> new IllegalStateException("Price category " + id + " not found"));
+    }
+
+    @Override
+    public List<Movie> findAllById(Iterable<Long> ids) {
+        IdentityMap identityMap = IdentityMap.current();
+        List<Movie> result = new ArrayList<>();
+        List<Long> idList = identityMap.resolve(Movie.class, SqlSupport.toList(ids), result);
+        if (idList.isEmpty()) {
+            return result;
+        }
+        result.addAll(queryMovies(
+            identityMap,
+            "select * from MOVIES where MOVIE_ID in (" + SqlSupport.placeholders(idList.size()) + ")",
+            idList.toArray()
+        ));
+        return result;
+    }
+
+    @Override
+    public List<Movie> findPage(Movie after, int limit, Sort sort) {
+        SeekQuery<Movie> query = new SeekQuery<>("select * from MOVIES", SORT_COLUMNS, sort, after, limit);
+        return queryMovies(IdentityMap.current(), query.getSql(), query.getArgs());
+    }
+
     @Override
     public List<Movie> findByTitle(String name) {
-        return jdbcTemplate.query(
+        return queryMovies(
+            IdentityMap.current(),
             "select * from MOVIES where MOVIE_TITLE = ?",
-            (rs, row) -> createMovie(rs),
             name
         );
     }
 
-    private Movie createMovie(ResultSet rs) throws SQLException {
-        long priceCategoryId = rs.getLong("PRICECATEGORY_FK");
-        return Movie.of(
+    /**
+     * Maps the movies of the given query. The price categories of all rows are
+     * resolved with one batch once the result set has been read. Movies already
+     * known to the identity map are not mapped again.
+     */
+    private List<Movie> queryMovies(IdentityMap identityMap, String sql, Object... args) {
+        BatchLoader<PriceCategory, Long> priceCategories = new BatchLoader<>(priceCategoryRepo, PriceCategory::getId);
+        List<Supplier<Movie>> movies = jdbcTemplate.query(
+            sql,
+            (rs, row) -> createMovie(rs, identityMap, priceCategories),
+            args
+        );
+        return movies.stream().map(Supplier::get).collect(Collectors.toList());
+    }
+
+    private Supplier<Movie> createMovie(ResultSet rs, IdentityMap identityMap, BatchLoader<PriceCategory, Long> priceCategories) throws SQLException {
+        long id = rs.getLong("MOVIE_ID");
+        Movie known = identityMap.get(Movie.class, id);
+        if (known != null) {
+            return () -> known;
+        }
+
+        Supplier<PriceCategory> priceCategory = priceCategories.load(rs.getLong("PRICECATEGORY_FK"));
+        String title = rs.getString("MOVIE_TITLE");
+        LocalDate releaseDate = rs.getDate("MOVIE_RELEASEDATE").toLocalDate();
+        boolean rented = rs.getBoolean("MOVIE_RENTED");
+        return () -> {
+            Movie movie = identityMap.get(Movie.class, id);
+            if (movie == null) {
+                Movie loaded = Movie.of(title, releaseDate, rented, priceCategory.get()).withId(id);
+                loaded.markClean();
+                movie = identityMap.put(Movie.class, id, loaded);
+            }
+            return movie;
+        };
+    }
+
+    static Movie createMovie(ResultSet rs, PriceCategory priceCategory) throws SQLException {
+        Movie movie = Movie.of(
                 rs.getString("MOVIE_TITLE"),
                 rs.getDate("MOVIE_RELEASEDATE").toLocalDate(),
                 rs.getBoolean("MOVIE_RENTED"),
-                priceCategoryRepo.findById(priceCategoryId).get())
+                priceCategory)
             .withId(rs.getLong("MOVIE_ID"));
+        movie.markClean();
+        return movie;
+    }
+
+    static final String CLAIM_SQL =
+        "update MOVIES set MOVIE_RENTED = TRUE where MOVIE_ID = ? and MOVIE_RENTED = FALSE";
+    static final String RELEASE_SQL =
+        "update MOVIES set MOVIE_RENTED = FALSE where MOVIE_ID = ? and MOVIE_RENTED = TRUE";
+
+    private static final String INSERT_SQL =
+        "insert into movies (movie_releasedate, movie_title, movie_rented, pricecategory_fk) values (?, ?, ?, ?)";
+    private static final String UPDATE_SQL =
+        "update movies set movie_releasedate = ?, movie_title = ?, movie_rented = ?, pricecategory_fk = ? where MOVIE_ID = ?";
+
+    private static final Map<Movie.Field, String> COLUMNS = new EnumMap<>(Movie.Field.class);
+    static {
+        COLUMNS.put(Movie.Field.RENTED, "MOVIE_RENTED");
+        COLUMNS.put(Movie.Field.PRICE_CATEGORY, "PRICECATEGORY_FK");
+    }
+
+    private static void setChangedValues(PreparedStatement ps, Movie movie, Set<Movie.Field> fields) throws SQLException {
+        int index = 1;
+        for (Movie.Field field : fields) {
+            switch (field) {
+                case RENTED: ps.setBoolean(index++, movie.isRented()); break;
+                case PRICE_CATEGORY: ps.setLong(index++, movie.getPriceCategory().getId()); break;
+                default: throw new IllegalArgumentException("Unknown field " + field);
+            }
+        }
+        ps.setLong(index, movie.getId());
+    }
+
+    private static void setValues(PreparedStatement ps, Movie movie) throws SQLException {
+        ps.setDate(1, java.sql.Date.valueOf(movie.getReleaseDate()));
+        ps.setString(2, movie.getTitle());
+        ps.setBoolean(3, movie.isRented());
+        ps.setLong(4, movie.getPriceCategory().getId());
+
+        if (movie.getId() != null) {
+            ps.setLong(5, movie.getId());
+        }
     }
 
     @Override
     public Movie save(Movie movie) {
+        if (movie.getId() != null && movie.isTracked()) {
+            // only the changed columns are written, nothing if there are none
+            Set<Movie.Field> fields = movie.getDirtyFields();
+            if (!fields.isEmpty()) {
+                jdbcTemplate.update(
+                    SqlSupport.updateSql("MOVIES", "MOVIE_ID", COLUMNS, fields),
+                    ps -> setChangedValues(ps, movie, fields));
+            }
+            movie.markClean();
+            return IdentityMap.current().put(Movie.class, movie.getId(), movie);
+        }
+
         KeyHolder keyHolder = new GeneratedKeyHolder();
 
-        final String INSERT_SQL;
-        if (movie.getId() == null) {
-            INSERT_SQL = "insert into movies (movie_releasedate, movie_title, movie_rented, pricecategory_fk) values (?, ?, ?, ?)";
-        } else {
-            INSERT_SQL = "update movies set movie_releasedate = ?, movie_title = ?, movie_rented = ?, pricecategory_fk = ? where MOVIE_ID = ?";
-        }
+        final String SQL = movie.getId() == null ? INSERT_SQL : UPDATE_SQL;
 
         jdbcTemplate.update(
             connection -> {
                 PreparedStatement ps =
-                    connection.prepareStatement(INSERT_SQL, new String[] {"MOVIE_ID"});
-                ps.setDate(1, java.sql.Date.valueOf(movie.getReleaseDate()));
-                ps.setString(2, movie.getTitle());
-                ps.setBoolean(3, movie.isRented());
-                ps.setLong(4, movie.getPriceCategory().getId());
-
-                if (movie.getId() != null) {
-                    ps.setLong(5, movie.getId());
-                }
-
+                    connection.prepareStatement(SQL, new String[] {"MOVIE_ID"});
+                setValues(ps, movie);
                 return ps;
             },
             keyHolder);
 
-        if (movie.getId() == null) {
-            return movie.withId(Objects.requireNonNull(keyHolder.getKey()).longValue());
-        } else {
-            return movie;
+        Movie saved = movie.getId() == null
+            ? movie.withId(Objects.requireNonNull(keyHolder.getKey()).longValue())
+            : movie;
+        saved.markClean();
+        return IdentityMap.current().put(Movie.class, saved.getId(), saved);
+    }
+
+    @Override
+    public List<Movie> saveAll(Iterable<Movie> movies) {
+        List<Movie> all = SqlSupport.toList(movies);
+        List<Movie> inserts = all.stream().filter(m -> m.getId() == null).collect(Collectors.toList());
+        List<Movie> updates = all.stream().filter(m -> m.getId() != null && !m.isTracked()).collect(Collectors.toList());
+        List<Movie> changes = all.stream().filter(m -> m.getId() != null && m.isTracked()).collect(Collectors.toList());
+
+        Iterator<Long> keys = SqlSupport.batchInsert(jdbcTemplate, INSERT_SQL, "MOVIE_ID", inserts, MovieRepositoryImpl::setValues).iterator();
+        SqlSupport.batchUpdate(jdbcTemplate, UPDATE_SQL, updates, MovieRepositoryImpl::setValues);
+        SqlSupport.batchUpdateChanged(jdbcTemplate, "MOVIES", "MOVIE_ID", COLUMNS, changes, Movie::getDirtyFields, MovieRepositoryImpl::setChangedValues);
+
+        IdentityMap identityMap = IdentityMap.current();
+        List<Movie> saved = new ArrayList<>(all.size());
+        for (Movie movie : all) {
+            Movie result = movie.getId() == null ? movie.withId(keys.next()) : movie;
+            result.markClean();
+            saved.add(identityMap.put(Movie.class, result.getId(), result));
         }
+        return saved;
+    }
+
+    @Override
+    public boolean claim(Long id) {
+        if (id == null) throw new IllegalArgumentException();
+        return jdbcTemplate.update(CLAIM_SQL, id) > 0;
+    }
+
+    @Override
+    public boolean release(Long id) {
+        if (id == null) throw new IllegalArgumentException();
+        return jdbcTemplate.update(RELEASE_SQL, id) > 0;
     }
 
     @Override
     public void delete(Movie movie) {
         if (movie == null) throw new IllegalArgumentException();
-        jdbcTemplate.update(
+        deleteById(movie.getId());
+        movie.setId(null);
+    }
+
+    @Override
+    public boolean deleteById(Long id) {
+        if (id == null) throw new IllegalArgumentException();
+        int deleted = jdbcTemplate.update(
             "delete from MOVIES where MOVIE_ID = ?",
-            movie.getId()
+            id
         );
 
-        movie.setId(null);
+        IdentityMap.current().remove(Movie.class, id);
+        return deleted > 0;
     }
 
     @Override
-    public void deleteById(Long id) {
-        if (id == null) throw new IllegalArgumentException();
-        findById(id).ifPresent(this::delete);
+    public void deleteAllById(Iterable<Long> ids) {
+        List<Long> idList = SqlSupport.toList(ids);
+        SqlSupport.batchUpdate(jdbcTemplate, "delete from MOVIES where MOVIE_ID = ?", idList, (ps, id) -> ps.setLong(1, id));
+
+        IdentityMap identityMap = IdentityMap.current();
+        idList.forEach(id -> identityMap.remove(Movie.class, id));
     }
 
     @Override
     public boolean existsById(Long id) {
-        return findById(id).isPresent();
+        if (id == null) throw new IllegalArgumentException();
+        return SqlSupport.exists(jdbcTemplate, "MOVIES", "MOVIE_ID", id);
     }
 
     @Override
@@ -0,0 +1,56 @@
+package ch.fhnw.edu.rental.persistence.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import ch.fhnw.edu.rental.model.PriceCategory;
+
+/**
+ * Immutable snapshot of all price categories. The instances are shared by all movies
+ * (flyweights) together with their precomputed tariffs; a registry is replaced as a
+ * whole whenever the categories change.
+ */
+final class PriceCategoryRegistry {
+
+    private final List<PriceCategory> categories;
+    private final Map<Long, PriceCategory> byId = new HashMap<>();
+    private final Map<String, PriceCategory> byName = new HashMap<>();
+
+    /**
+     * @param categories the price categories in the order returned by {@link #findAll()}
+     * @param tariffDays the number of rental days for which the charges are precomputed
+     */
+    PriceCategoryRegistry(List<PriceCategory> categories, int tariffDays) {
+        this.categories = Collections.unmodifiableList(new ArrayList<>(categories));
+        for (PriceCategory category : categories) {
+            category.precompute(tariffDays);
+            byId.put(category.getId(), category);
+            byName.put(PriceCategoryRepositoryImpl.typeName(category), category);
+            byName.put(category.toString(), category);
+        }
+    }
+
+    Optional<PriceCategory> findById(Long id) {
+        return Optional.ofNullable(byId.get(id));
+    }
+
+    /**
+     * Looks up a category either by its stored type name (e.g. {@code NewRelease}) or by
+     * its display name (e.g. {@code New Release}).
+     */
+    Optional<PriceCategory> findByName(String name) {
+        return Optional.ofNullable(byName.get(name));
+    }
+
+    List<PriceCategory> findAll() {
+        return categories;
+    }
+
+    int size() {
+        return categories.size();
+    }
+}
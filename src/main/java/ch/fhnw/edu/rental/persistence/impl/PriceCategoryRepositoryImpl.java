@@ -4,55 +4,104 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
-import ch.fhnw.edu.rental.model.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import ch.fhnw.edu.rental.model.ConfiguredPriceCategory;
+import ch.fhnw.edu.rental.model.PriceCategory;
+import ch.fhnw.edu.rental.model.PriceCategoryChildren;
+import ch.fhnw.edu.rental.model.PriceCategoryNewRelease;
+import ch.fhnw.edu.rental.model.PriceCategoryRegular;
+import ch.fhnw.edu.rental.model.TariffRules;
 import ch.fhnw.edu.rental.persistence.PriceCategoryRepository;
+import ch.fhnw.edu.rental.persistence.Sort;
 
+/**
+ * Price categories are read once into a {@link PriceCategoryRegistry}; all read
+ * operations are served from this registry. It is reloaded after {@link #save} and
+ * {@link #delete}, and once more when the surrounding transaction completes so that a
+ * rollback is reflected as well.
+ */
 @Component
+@Profile("!memory")
 public class PriceCategoryRepositoryImpl implements PriceCategoryRepository {
 
     private final JdbcTemplate jdbcTemplate;
+    private final int tariffDays;
 
-    public PriceCategoryRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    private volatile PriceCategoryRegistry registry;
+
+    public PriceCategoryRepositoryImpl(JdbcTemplate jdbcTemplate,
+                                       @Value("${rental.tariff.max-days:400}") int tariffDays) {
         this.jdbcTemplate = jdbcTemplate;
+        this.tariffDays = tariffDays;
+        this.registry = loadRegistry();
+    }
+
+    private PriceCategoryRegistry loadRegistry() {
+        return new PriceCategoryRegistry(jdbcTemplate.query(
+            "select * from pricecategories order by pricecategory_id",
+            (rs, row) -> createPriceCategory(rs)
+        ), tariffDays);
+    }
+
+    private void refreshRegistry() {
+        registry = loadRegistry();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    registry = loadRegistry();
+                }
+            });
+        }
     }
 
     @Override
 	public Optional<PriceCategory> findById(Long id) {
-        List<PriceCategory> priceCategories = jdbcTemplate.query(
-            "select * from PRICECATEGORIES where PRICECATEGORY_ID = ?",
-            (rs, row) -> createPriceCategory(rs),
-            id
-        );
+		if(id == null) throw new IllegalArgumentException();
+        return registry.findById(id);
+	}
 
-        if (priceCategories.size() == 0) {
-            return Optional.empty();
-        } else if (priceCategories.size() > 1) {
-            throw new IllegalStateException("Multiple priceCategories have the same id");
-        } else {
-            return Optional.of(priceCategories.get(0));
-        }
+    @Override
+	public Optional<PriceCategory> findByName(String name) {
+		if(name == null) throw new IllegalArgumentException();
+        return registry.findByName(name);
 	}
 
-    private PriceCategory createPriceCategory(ResultSet rs) throws SQLException {
+    /**
+     * Creates a category from its row. The known types fall back to their default
+     * rules while the tariff columns are null; any other type is a
+     * {@link ConfiguredPriceCategory} and must have its rules stored.
+     */
+    static PriceCategory createPriceCategory(ResultSet rs) throws SQLException {
         long id = rs.getLong("PRICECATEGORY_ID");
         String type = rs.getString("PRICECATEGORY_TYPE");
+        TariffRules rules = tariffRules(rs);
 
         PriceCategory category;
         switch (type) {
-            case "Regular": category = new PriceCategoryRegular(); break;
-            case "Children": category = new PriceCategoryChildren(); break;
-            case "NewRelease": category = new PriceCategoryNewRelease(); break;
+            case "Regular": category = rules == null ? new PriceCategoryRegular() : new PriceCategoryRegular(rules); break;
+            case "Children": category = rules == null ? new PriceCategoryChildren() : new PriceCategoryChildren(rules); break;
+            case "NewRelease": category = rules == null ? new PriceCategoryNewRelease() : new PriceCategoryNewRelease(rules); break;
             default:
-                throw new IllegalArgumentException("Unkown price cateogry");
+                if (rules == null) {
+                    throw new IllegalArgumentException("No tariff rules for price category " + type);
+                }
+                category = new ConfiguredPriceCategory(type, rules);
         }
 
         category.setId(id);
@@ -60,56 +109,163 @@ public class PriceCategoryRepositoryImpl implements PriceCategoryRepository {
         return category;
     }
 
+    /**
+     * Returns the rules stored in the tariff columns, or null if they are not set.
+     */
+    private static TariffRules tariffRules(ResultSet rs) throws SQLException {
+        long baseCents = rs.getLong("PRICECATEGORY_BASE_CENTS");
+        if (rs.wasNull()) {
+            return null;
+        }
+        return TariffRules.of(
+            baseCents,
+            rs.getInt("PRICECATEGORY_INCLUDED_DAYS"),
+            rs.getLong("PRICECATEGORY_DAY_CENTS"),
+            rs.getInt("PRICECATEGORY_POINTS"),
+            rs.getInt("PRICECATEGORY_BONUS_DAYS"),
+            rs.getInt("PRICECATEGORY_BONUS_POINTS"));
+    }
+
+    /**
+     * Returns the value stored in PRICECATEGORY_TYPE for the given category.
+     */
+    static String typeName(PriceCategory category) {
+        if (category instanceof PriceCategoryRegular) return "Regular";
+        if (category instanceof PriceCategoryChildren) return "Children";
+        if (category instanceof PriceCategoryNewRelease) return "NewRelease";
+        if (category instanceof ConfiguredPriceCategory) return ((ConfiguredPriceCategory) category).getName();
+        throw new IllegalArgumentException("Unkown price cateogry");
+    }
+
     @Override
 	public List<PriceCategory> findAll() {
-        return jdbcTemplate.query(
-            "select * from pricecategories",
-            (rs, row) -> createPriceCategory(rs)
-        );
+        return registry.findAll();
+	}
+
+    @Override
+	public void forEach(Consumer<? super PriceCategory> action) {
+		if(action == null) throw new IllegalArgumentException();
+        registry.findAll().forEach(action);
+	}
+
+    @Override
+	public List<PriceCategory> findAllById(Iterable<Long> ids) {
+        PriceCategoryRegistry current = registry;
+        List<PriceCategory> result = new ArrayList<>();
+        for (Long id : SqlSupport.toList(ids)) {
+            current.findById(id).ifPresent(result::add);
+        }
+        return result;
+	}
+
+    @Override
+	public List<PriceCategory> findPage(PriceCategory after, int limit, Sort sort) {
+		if(sort == null || limit <= 0) throw new IllegalArgumentException();
+		Long afterId = after == null ? null : after.getId();
+		if(!"id".equals(sort.getProperty())) throw new IllegalArgumentException("Unknown sort property " + sort.getProperty());
+        Comparator<PriceCategory> order = Comparator.comparing(PriceCategory::getId);
+        return registry.findAll().stream()
+            .sorted(sort.isAscending() ? order : order.reversed())
+            .filter(c -> afterId == null || (sort.isAscending() ? c.getId() > afterId : c.getId() < afterId))
+            .limit(limit)
+            .collect(Collectors.toList());
 	}
 
+    private static final String COLUMNS =
+        "pricecategory_type, pricecategory_base_cents, pricecategory_included_days, pricecategory_day_cents, "
+        + "pricecategory_points, pricecategory_bonus_days, pricecategory_bonus_points";
+    private static final String INSERT_SQL =
+        "insert into pricecategories (" + COLUMNS + ") values (?, ?, ?, ?, ?, ?, ?)";
+    private static final String MERGE_SQL =
+        "merge into pricecategories (" + COLUMNS + ", pricecategory_id) key (pricecategory_id) values (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static void setValues(PreparedStatement ps, PriceCategory category) throws SQLException {
+        TariffRules rules = category.getRules();
+        ps.setString(1, typeName(category));
+        ps.setLong(2, rules.getBaseCents());
+        ps.setInt(3, rules.getIncludedDays());
+        ps.setLong(4, rules.getDayCents());
+        ps.setInt(5, rules.getPoints());
+        ps.setInt(6, rules.getBonusDays());
+        ps.setInt(7, rules.getBonusPoints());
+
+        if (category.getId() != null) {
+            ps.setLong(8, category.getId());
+        }
+    }
+
 	@Override
 	public PriceCategory save(PriceCategory category) {
         KeyHolder keyHolder = new GeneratedKeyHolder();
-        String INSERT_SQL = "insert into pricecategories (pricecategory_id, pricecategory_type) values (?, ?);";
+
+        final String SQL = category.getId() == null ? INSERT_SQL : MERGE_SQL;
+
         jdbcTemplate.update(
             connection -> {
                 PreparedStatement ps =
-                    connection.prepareStatement(INSERT_SQL, new String[] {"pricecategory_id"});
-                ps.setLong(1, category.getId());
-                ps.setString(2, category.toString());
+                    connection.prepareStatement(SQL, new String[] {"PRICECATEGORY_ID"});
+                setValues(ps, category);
                 return ps;
             },
             keyHolder);
 
-        // todo fix
-        return category;
-//        return movie.withId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        if (category.getId() == null) {
+            category.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        }
+        refreshRegistry();
+        return registry.findById(category.getId()).orElse(category);
+	}
+
+	@Override
+	public List<PriceCategory> saveAll(Iterable<PriceCategory> categories) {
+        List<PriceCategory> all = SqlSupport.toList(categories);
+        List<PriceCategory> inserts = all.stream().filter(c -> c.getId() == null).collect(Collectors.toList());
+        List<PriceCategory> merges = all.stream().filter(c -> c.getId() != null).collect(Collectors.toList());
+
+        List<Long> keys = SqlSupport.batchInsert(jdbcTemplate, INSERT_SQL, "PRICECATEGORY_ID", inserts, PriceCategoryRepositoryImpl::setValues);
+        SqlSupport.batchUpdate(jdbcTemplate, MERGE_SQL, merges, PriceCategoryRepositoryImpl::setValues);
+
+        for (int i = 0; i < inserts.size(); i++) {
+            inserts.get(i).setId(keys.get(i));
+        }
+        refreshRegistry();
+        PriceCategoryRegistry current = registry;
+        return all.stream().map(c -> current.findById(c.getId()).orElse(c)).collect(Collectors.toList());
 	}
 
 	@Override
 	public void delete(PriceCategory priceCategory) {
 		if(priceCategory == null) throw new IllegalArgumentException();
-        jdbcTemplate.update(
+		deleteById(priceCategory.getId());
+	}
+
+	@Override
+	public boolean deleteById(Long id) {
+		if(id == null) throw new IllegalArgumentException();
+        int deleted = jdbcTemplate.update(
             "delete from pricecategories where pricecategory_id = ?",
-            priceCategory.getId()
+            id
         );
+        refreshRegistry();
+        return deleted > 0;
 	}
 
 	@Override
-	public void deleteById(Long id) {
-		if(id == null) throw new IllegalArgumentException();
-		findById(id).ifPresent(this::delete);
+	public void deleteAllById(Iterable<Long> ids) {
+        List<Long> idList = SqlSupport.toList(ids);
+        SqlSupport.batchUpdate(jdbcTemplate, "delete from pricecategories where pricecategory_id = ?", idList, (ps, id) -> ps.setLong(1, id));
+        refreshRegistry();
 	}
 
 	@Override
 	public boolean existsById(Long id) {
+        // served from the registry, which is reloaded on every change
         return findById(id).isPresent();
 	}
 
 	@Override
 	public long count() {
-        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pricecategories", Long.class);
+        return registry.size();
 	}
 
 }
@@ -0,0 +1,158 @@
+package ch.fhnw.edu.rental.persistence.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import ch.fhnw.edu.rental.model.Movie;
+import ch.fhnw.edu.rental.model.PriceCategory;
+import ch.fhnw.edu.rental.model.Rental;
+import ch.fhnw.edu.rental.model.User;
+import ch.fhnw.edu.rental.persistence.PriceCategoryRepository;
+
+/**
+ * Builds the rental/user/movie graph from a single result set over
+ * RENTALS ⋈ USERS ⋈ MOVIES. Every user and movie is created only once, no matter how
+ * many rows refer to it. Instances already present in the {@link IdentityMap} of the
+ * current unit of work are reused, price categories are taken from the
+ * {@link PriceCategoryRepository}.
+ * <p>
+ * The queries must contain all rentals of the users they create. Rentals are only added
+ * to the lazy rental list of a known user if that list has already been loaded.
+ * <p>
+ * A {@linkplain #streaming streaming} extractor expects the rows ordered by USER_ID. It
+ * passes each user to a callback as soon as all of its rows have been read and then
+ * forgets it; nothing is registered in the identity map. Memory is thus bounded by the
+ * rentals of a single user.
+ */
+class RentalGraphExtractor implements ResultSetExtractor<List<Rental>> {
+
+    static final String SELECT_RENTALS =
+        "select * from RENTALS r" +
+        " join USERS u on r.USER_ID = u.USER_ID" +
+        " join MOVIES m on r.MOVIE_ID = m.MOVIE_ID";
+
+    private final IdentityMap identityMap;
+    private final PriceCategoryRepository priceCategoryRepo;
+    private final User owner;
+    private final BiConsumer<User, List<Rental>> userAction;
+
+    private final Map<Long, User> users = new HashMap<>();
+
+    /**
+     * Creates an extractor which creates the users found in the result set and adds the
+     * rentals to their rental lists.
+     */
+    RentalGraphExtractor(IdentityMap identityMap, PriceCategoryRepository priceCategoryRepo) {
+        this(identityMap, priceCategoryRepo, null);
+    }
+
+    /**
+     * Creates an extractor for the rentals of the given user. The rentals refer to
+     * {@code owner}, but are not added to its rental list.
+     */
+    RentalGraphExtractor(IdentityMap identityMap, PriceCategoryRepository priceCategoryRepo, User owner) {
+        this(identityMap, priceCategoryRepo, owner, null);
+    }
+
+    private RentalGraphExtractor(IdentityMap identityMap, PriceCategoryRepository priceCategoryRepo,
+                                 User owner, BiConsumer<User, List<Rental>> userAction) {
+        this.identityMap = identityMap;
+        this.priceCategoryRepo = priceCategoryRepo;
+        this.owner = owner;
+        this.userAction = userAction;
+    }
+
+    /**
+     * Creates a streaming extractor which calls {@code userAction} once per user with the
+     * user and its rentals read from the result set. {@link #extractData} then returns
+     * an empty list.
+     */
+    static RentalGraphExtractor streaming(IdentityMap identityMap, PriceCategoryRepository priceCategoryRepo,
+                                          BiConsumer<User, List<Rental>> userAction) {
+        return new RentalGraphExtractor(identityMap, priceCategoryRepo, null, userAction);
+    }
+
+    @Override
+    public List<Rental> extractData(ResultSet rs) throws SQLException {
+        List<Rental> rentals = new ArrayList<>();
+        User current = null;
+        while (rs.next()) {
+            User user = owner != null ? owner : user(rs);
+
+            if (userAction != null && current != null && user != current) {
+                userAction.accept(current, rentals);
+                rentals = new ArrayList<>();
+                users.clear();
+            }
+            current = user;
+
+            long rentalId = rs.getLong("RENTAL_ID");
+            Rental rental = identityMap.get(Rental.class, rentalId);
+            if (rental == null) {
+                Rental created = Rental.of(
+                    rentalId,
+                    user,
+                    movie(rs),
+                    rs.getInt("RENTAL_RENTALDAYS"),
+                    rs.getDate("RENTAL_RENTALDATE").toLocalDate());
+                long chargedCents = rs.getLong("RENTAL_FEE_CENTS");
+                if (!rs.wasNull()) {
+                    created.setChargedCents(chargedCents);
+                }
+                rental = register(Rental.class, rentalId, created);
+
+                if (owner == null && LazyList.isLoaded(user.getRentals()) && !user.getRentals().contains(rental)) {
+                    user.getRentals().add(rental);
+                }
+            }
+            rentals.add(rental);
+        }
+
+        if (userAction != null) {
+            if (current != null) {
+                userAction.accept(current, rentals);
+            }
+            return new ArrayList<>();
+        }
+        return rentals;
+    }
+
+    private User user(ResultSet rs) throws SQLException {
+        long id = rs.getLong("USER_ID");
+        User user = users.get(id);
+        if (user == null) {
+            user = identityMap.get(User.class, id);
+            if (user == null) {
+                user = register(User.class, id, UserRepositoryImpl.createUser(rs));
+            }
+            users.put(id, user);
+        }
+        return user;
+    }
+
+    private Movie movie(ResultSet rs) throws SQLException {
+        long id = rs.getLong("MOVIE_ID");
+        Movie movie = identityMap.get(Movie.class, id);
+        if (movie == null) {
+            movie = register(Movie.class, id, MovieRepositoryImpl.createMovie(rs, priceCategory(rs)));
+        }
+        return movie;
+    }
+
+    private <T> T register(Class<T> type, long id, T entity) {
+        return userAction == null ? identityMap.put(type, id, entity) : entity;
+    }
+
+    private PriceCategory priceCategory(ResultSet rs) throws SQLException {
+        long id = rs.getLong("PRICECATEGORY_FK");
+        return priceCategoryRepo.findById(id)
+            .orElseThrow(() -> new IllegalStateException("Price category " + id + " not found"));
+    }
+}
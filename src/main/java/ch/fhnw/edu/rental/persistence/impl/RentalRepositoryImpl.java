@@ -1,112 +1,416 @@
 package ch.fhnw.edu.rental.persistence.impl;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.LocalDate;
-import java.time.Month;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
-import ch.fhnw.edu.rental.model.Movie;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
 
+import ch.fhnw.edu.rental.model.Movie;
+import ch.fhnw.edu.rental.model.PriceCategory;
 import ch.fhnw.edu.rental.model.Rental;
 import ch.fhnw.edu.rental.model.User;
-import ch.fhnw.edu.rental.persistence.MovieRepository;
+import ch.fhnw.edu.rental.persistence.PriceCategoryRepository;
+import ch.fhnw.edu.rental.persistence.RentalColumns;
 import ch.fhnw.edu.rental.persistence.RentalRepository;
-import ch.fhnw.edu.rental.persistence.UserRepository;
+import ch.fhnw.edu.rental.persistence.Sort;
 
 @Component
+@Profile("!memory")
 public class RentalRepositoryImpl implements RentalRepository {
 
+    private static final Map<String, SeekQuery.Column<Rental>> SORT_COLUMNS = new HashMap<>();
+    static {
+        SORT_COLUMNS.put("id", new SeekQuery.Column<>("RENTAL_ID", Rental::getId));
+        SORT_COLUMNS.put("rentalDate", new SeekQuery.Column<>("RENTAL_RENTALDATE", Rental::getRentalDate));
+    }
+
     private final JdbcTemplate jdbcTemplate;
-	private final UserRepository userRepo;
-	private final MovieRepository movieRepo;
+    private final PriceCategoryRepository priceCategoryRepo;
+    private final int fetchSize;
 
-    public RentalRepositoryImpl(JdbcTemplate jdbcTemplate, UserRepository userRepo, MovieRepository movieRepo) {
+    public RentalRepositoryImpl(JdbcTemplate jdbcTemplate, PriceCategoryRepository priceCategoryRepo,
+                                @Value("${rental.jdbc.fetch-size:500}") int fetchSize) {
         this.jdbcTemplate = jdbcTemplate;
-        this.userRepo = userRepo;
-        this.movieRepo = movieRepo;
+        this.priceCategoryRepo = priceCategoryRepo;
+        this.fetchSize = fetchSize;
     }
 
 	@Override
 	public Optional<Rental> findById(Long id) {
 		if(id == null) throw new IllegalArgumentException();
-        List<Rental> rental = jdbcTemplate.query(
-            "select * from RENTALS where RENTAL_ID = ?",
-            (rs, row) -> createRental(rs),
+        IdentityMap identityMap = IdentityMap.current();
+        Rental known = identityMap.get(Rental.class, id);
+        if (known != null) {
+            return Optional.of(known);
+        }
+
+        // all rentals of the owner are loaded as well, so that the rentals of the user are complete
+        List<Rental> rentals = jdbcTemplate.query(
+            RentalGraphExtractor.SELECT_RENTALS + " where r.USER_ID = (select USER_ID from RENTALS where RENTAL_ID = ?) order by r.RENTAL_ID",
+            new RentalGraphExtractor(identityMap, priceCategoryRepo),
             id
         );
 
-        if (rental.size() == 0) {
-            return Optional.empty();
-        } else if (rental.size() > 1) {
-            throw new IllegalStateException("Multiple rental have the same id");
-        } else {
-            return Optional.of(rental.get(0));
+        return rentals.stream().filter(rental -> id.equals(rental.getId())).findFirst();
+	}
+
+    @Override
+	public List<Rental> findAll() {
+        return jdbcTemplate.query(
+            RentalGraphExtractor.SELECT_RENTALS + " order by r.RENTAL_ID",
+            new RentalGraphExtractor(IdentityMap.current(), priceCategoryRepo)
+        );
+	}
+
+	@Override
+	public void forEach(Consumer<? super Rental> action) {
+		if(action == null) throw new IllegalArgumentException();
+        // ordered by user so that the rentals of each user can be released as a group
+        jdbcTemplate.query(
+            SqlSupport.cursor(RentalGraphExtractor.SELECT_RENTALS + " order by r.USER_ID, r.RENTAL_ID", fetchSize),
+            RentalGraphExtractor.streaming(IdentityMap.current(), priceCategoryRepo, (user, rentals) -> rentals.forEach(action))
+        );
+	}
+
+	@Override
+	public List<Rental> findAllById(Iterable<Long> ids) {
+        IdentityMap identityMap = IdentityMap.current();
+        List<Rental> result = new ArrayList<>();
+        List<Long> idList = identityMap.resolve(Rental.class, SqlSupport.toList(ids), result);
+        if (idList.isEmpty()) {
+            return result;
         }
+        List<Rental> rentals = jdbcTemplate.query(
+            RentalGraphExtractor.SELECT_RENTALS + " where r.USER_ID in (select USER_ID from RENTALS where RENTAL_ID in ("
+                + SqlSupport.placeholders(idList.size()) + ")) order by r.RENTAL_ID",
+            new RentalGraphExtractor(identityMap, priceCategoryRepo),
+            idList.toArray()
+        );
+
+        Set<Long> wanted = new HashSet<>(idList);
+        rentals.stream().filter(rental -> wanted.contains(rental.getId())).forEach(result::add);
+        return result;
 	}
 
-    private Rental createRental(ResultSet rs) throws SQLException {
+	@Override
+	public List<Rental> findPage(Rental after, int limit, Sort sort) {
+        // findAllById loads the complete rentals of the owners
+        SeekQuery<Rental> query = new SeekQuery<>("select RENTAL_ID from RENTALS", SORT_COLUMNS, sort, after, limit);
+        List<Long> ids = jdbcTemplate.queryForList(query.getSql(), Long.class, query.getArgs());
+        return SqlSupport.inOrder(ids, findAllById(ids), Rental::getId);
+	}
 
-        long userId = rs.getLong("USER_ID");
-        User user = userRepo.findById(userId).orElseThrow(() -> new IllegalArgumentException("User not found"));
+	@Override
+	public List<Rental> findByUser(User user) {
+        return jdbcTemplate.query(
+            RentalGraphExtractor.SELECT_RENTALS + " where r.USER_ID = ? order by r.RENTAL_ID",
+            new RentalGraphExtractor(IdentityMap.current(), priceCategoryRepo, user),
+            user.getId()
+        );
+	}
 
-        long movieId = rs.getLong("MOVIE_ID");
-        Movie movie = movieRepo.findById(movieId).orElseThrow(() -> new IllegalArgumentException("Movie not found"));
+    private static final String SELECT_ROWS =
+        "select r.RENTAL_ID, r.RENTAL_RENTALDAYS, r.RENTAL_RENTALDATE, u.USER_NAME, u.USER_FIRSTNAME, m.MOVIE_TITLE, m.PRICECATEGORY_FK" +
+        " from RENTALS r" +
+        " join USERS u on r.USER_ID = u.USER_ID" +
+        " join MOVIES m on r.MOVIE_ID = m.MOVIE_ID";
 
-        long rentalId = rs.getLong("RENTAL_ID");
+	@Override
+	public void forEachRow(Long afterId, int limit, RentalRow action) {
+		if(limit <= 0 || action == null) throw new IllegalArgumentException();
+        jdbcTemplate.query(SqlSupport.pageCursor(SELECT_ROWS, "r.RENTAL_ID", afterId, limit, fetchSize), rowHandler(action));
+	}
 
-        int rentalDays = rs.getInt("RENTAL_RENTALDAYS");
-        Rental rental = new Rental(user, movie, rentalDays);
-        rental.setId(rentalId);
+	@Override
+	public void forEachRowOfUser(Long userId, RentalRow action) {
+		if(userId == null || action == null) throw new IllegalArgumentException();
+        jdbcTemplate.query(
+            SqlSupport.cursor(SELECT_ROWS + " where r.USER_ID = ? order by r.RENTAL_ID", fetchSize, userId),
+            rowHandler(action)
+        );
+	}
 
-        return rental;
+    private RowCallbackHandler rowHandler(RentalRow action) {
+        return rs -> {
+            long categoryId = rs.getLong(7);
+            PriceCategory category = priceCategoryRepo.findById(categoryId)
+                .orElseThrow(() -> new IllegalStateException("Price category " + categoryId + " not found"));
+            action.accept(rs.getLong(1), rs.getInt(2), rs.getDate(3).toLocalDate(), rs.getString(4), rs.getString(5),
+                rs.getString(6), category);
+        };
     }
 
-    @Override
-	public List<Rental> findAll() {
-        return jdbcTemplate.query(
-            "select * from RENTALS",
-            (rs, row) -> createRental(rs)
+	@Override
+	public RentalColumns loadColumns() {
+        RentalColumns columns = new RentalColumns((int) count());
+        jdbcTemplate.query(
+            SqlSupport.cursor(
+                "select r.USER_ID, r.MOVIE_ID, m.PRICECATEGORY_FK, r.RENTAL_RENTALDAYS, r.RENTAL_RENTALDATE" +
+                " from RENTALS r join MOVIES m on r.MOVIE_ID = m.MOVIE_ID" +
+                " order by r.USER_ID, r.RENTAL_ID",
+                fetchSize),
+            rs -> {
+                columns.add(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getInt(4), rs.getDate(5).toLocalDate());
+            }
         );
+        return columns;
 	}
 
 	@Override
-	public List<Rental> findByUser(User user) {
-        return jdbcTemplate.query(
-            "select * from RENTALS where USER_ID = ?",
-            (rs, row) -> createRental(rs),
-            user.getId()
-        );
+	public long countByUserId(Long userId) {
+		if(userId == null) throw new IllegalArgumentException();
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RENTALS WHERE USER_ID = ?", Long.class, userId);
 	}
 
+    private static final String INSERT_SQL =
+        "insert into rentals (movie_id, user_id, rental_rentaldate, rental_rentaldays, rental_fee_cents) values (?, ?, ?, ?, ?)";
+
+    private static void setValues(PreparedStatement ps, Rental rental) throws SQLException {
+        ps.setLong(1, rental.getMovie().getId());
+        ps.setLong(2, rental.getUser().getId());
+        ps.setDate(3, java.sql.Date.valueOf(rental.getRentalDate()));
+        ps.setInt(4, rental.getRentalDays());
+        ps.setLong(5, rental.charge());
+    }
+
+    private static final String UPDATE_BALANCE_SQL =
+        "update USER_BALANCES set BALANCE_CHARGE_CENTS = BALANCE_CHARGE_CENTS + ?, BALANCE_POINTS = BALANCE_POINTS + ? where USER_ID = ?";
+    private static final String INSERT_BALANCE_SQL =
+        "insert into USER_BALANCES (BALANCE_CHARGE_CENTS, BALANCE_POINTS, USER_ID) values (?, ?, ?)";
+    private static final String DUPLICATE_KEY = "23505";
+
+    /**
+     * Adds a charge and points to the balance of a user. The row is created on the first
+     * rental of the user; if another transaction created it meanwhile, the update is
+     * repeated.
+     */
+    private static void addToBalance(Connection connection, long userId, long chargeCents, int points) throws SQLException {
+        if (updateBalance(connection, UPDATE_BALANCE_SQL, userId, chargeCents, points) > 0) {
+            return;
+        }
+        try {
+            updateBalance(connection, INSERT_BALANCE_SQL, userId, chargeCents, points);
+        } catch (SQLException e) {
+            if (!DUPLICATE_KEY.equals(e.getSQLState())) {
+                throw e;
+            }
+            updateBalance(connection, UPDATE_BALANCE_SQL, userId, chargeCents, points);
+        }
+    }
+
+    private static int updateBalance(Connection connection, String sql, long userId, long chargeCents, int points) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setLong(1, chargeCents);
+            ps.setInt(2, points);
+            ps.setLong(3, userId);
+            return ps.executeUpdate();
+        }
+    }
+
 	@Override
 	public Rental save(Rental rental) {
         KeyHolder keyHolder = new GeneratedKeyHolder();
-        String INSERT_SQL = "insert into rentals (movie_id, user_id, rental_rentaldate, rental_rentaldays) values (?, ?, ?, ?);";
         jdbcTemplate.update(
             connection -> {
                 PreparedStatement ps =
                     connection.prepareStatement(INSERT_SQL, new String[] {"rental_id"});
-                ps.setLong(1, rental.getUser().getId());
-                ps.setLong(2, rental.getMovie().getId());
-                ps.setDate(3, java.sql.Date.valueOf(rental.getRentalDate()));
-                ps.setInt(4, rental.getRentalDays());
+                setValues(ps, rental);
                 return ps;
             },
             keyHolder);
 
         rental.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
-        return rental;
+        attach(rental);
+        return IdentityMap.current().put(Rental.class, rental.getId(), rental);
 	}
 
+	@Override
+	public List<Rental> saveAll(Iterable<Rental> rentals) {
+        List<Rental> all = SqlSupport.toList(rentals);
+        List<Long> keys = SqlSupport.batchInsert(jdbcTemplate, INSERT_SQL, "RENTAL_ID", all, RentalRepositoryImpl::setValues);
+
+        IdentityMap identityMap = IdentityMap.current();
+        for (int i = 0; i < all.size(); i++) {
+            Rental rental = all.get(i);
+            rental.setId(keys.get(i));
+            attach(rental);
+            identityMap.put(Rental.class, rental.getId(), rental);
+        }
+        return all;
+	}
+
+	@Override
+	public Optional<Long> findMovieIdByRentalId(Long id) {
+		if(id == null) throw new IllegalArgumentException();
+        List<Long> movieIds = jdbcTemplate.queryForList("select MOVIE_ID from RENTALS where RENTAL_ID = ?", Long.class, id);
+        return movieIds.isEmpty() ? Optional.empty() : Optional.of(movieIds.get(0));
+	}
+
+	@Override
+	public Optional<Rental> rent(Rental rental) {
+		if(rental == null) throw new IllegalArgumentException();
+        Long id = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try (PreparedStatement claim = connection.prepareStatement(MovieRepositoryImpl.CLAIM_SQL)) {
+                claim.setLong(1, rental.getMovie().getId());
+                if (claim.executeUpdate() == 0) {
+                    return null;
+                }
+            }
+            long key;
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_SQL, new String[] {"RENTAL_ID"})) {
+                setValues(insert, rental);
+                insert.executeUpdate();
+                try (ResultSet keys = insert.getGeneratedKeys()) {
+                    keys.next();
+                    key = keys.getLong(1);
+                }
+            }
+            addToBalance(connection, rental.getUser().getId(), rental.charge(), rental.getFrequentRenterPoints());
+            return key;
+        });
+        if (id == null) {
+            return Optional.empty();
+        }
+        rental.setId(id);
+        attach(rental);
+        return Optional.of(IdentityMap.current().put(Rental.class, id, rental));
+	}
+
+	@Override
+	public boolean rentAll(List<Rental> rentals) {
+		if(rentals == null) throw new IllegalArgumentException();
+        if (rentals.isEmpty()) {
+            return true;
+        }
+        Object[] movieIds = rentals.stream().map(rental -> rental.getMovie().getId()).toArray();
+        String in = SqlSupport.placeholders(movieIds.length);
+
+        // locks the available movies until the transaction ends, so the update claims all of them
+        List<Long> available = jdbcTemplate.queryForList(
+            "select MOVIE_ID from MOVIES where MOVIE_ID in (" + in + ") and MOVIE_RENTED = FALSE for update",
+            Long.class, movieIds);
+        if (available.size() != movieIds.length) {
+            return false;
+        }
+        int claimed = jdbcTemplate.update(
+            "update MOVIES set MOVIE_RENTED = TRUE where MOVIE_ID in (" + in + ") and MOVIE_RENTED = FALSE",
+            movieIds);
+        if (claimed != movieIds.length) {
+            throw new IllegalStateException("Expected to claim " + movieIds.length + " movies, claimed " + claimed);
+        }
+
+        saveAll(rentals);
+
+        // one balance update per user; usually all rentals belong to the same user
+        Map<Long, long[]> totals = new LinkedHashMap<>();
+        for (Rental rental : rentals) {
+            long[] total = totals.computeIfAbsent(rental.getUser().getId(), userId -> new long[2]);
+            total[0] += rental.charge();
+            total[1] += rental.getFrequentRenterPoints();
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            for (Map.Entry<Long, long[]> total : totals.entrySet()) {
+                addToBalance(connection, total.getKey(), total.getValue()[0], (int) total.getValue()[1]);
+            }
+            return null;
+        });
+        return true;
+	}
+
+	@Override
+	public boolean giveBack(Rental rental) {
+		if(rental == null) throw new IllegalArgumentException();
+        return giveBack(rental.getId(), rental.getMovie().getId(), rental.getUser().getId(), rental.charge());
+	}
+
+	@Override
+	public boolean giveBackById(Long id) {
+		if(id == null) throw new IllegalArgumentException();
+        return giveBackWhere("r.RENTAL_ID = ?", id);
+	}
+
+	@Override
+	public boolean giveBackByMovieId(Long movieId) {
+		if(movieId == null) throw new IllegalArgumentException();
+        // uses IDX_RENTALS_MOVIE
+        return giveBackWhere("r.MOVIE_ID = ?", movieId);
+	}
+
+    /**
+     * Gives back the first rental matching the condition. Only the columns needed for
+     * its fee are read, the rental itself is not loaded. The fee charged when it was
+     * rented is subtracted; the current fee only for rows stored without it.
+     */
+    private boolean giveBackWhere(String condition, long arg) {
+        // rental id, movie id, user id and fee in cents
+        List<long[]> found = jdbcTemplate.query(
+            "select r.RENTAL_ID, r.MOVIE_ID, r.USER_ID, r.RENTAL_FEE_CENTS, r.RENTAL_RENTALDAYS, m.PRICECATEGORY_FK" +
+            " from RENTALS r join MOVIES m on r.MOVIE_ID = m.MOVIE_ID where " + condition,
+            (rs, row) -> {
+                long feeCents = rs.getLong(4);
+                if (rs.wasNull()) {
+                    long categoryId = rs.getLong(6);
+                    PriceCategory category = priceCategoryRepo.findById(categoryId)
+                        .orElseThrow(() -> new IllegalStateException("Price category " + categoryId + " not found"));
+                    feeCents = category.getChargeCents(rs.getInt(5));
+                }
+                return new long[] { rs.getLong(1), rs.getLong(2), rs.getLong(3), feeCents };
+            },
+            arg);
+        if (found.isEmpty()) {
+            return false;
+        }
+        long[] rental = found.get(0);
+        return giveBack(rental[0], rental[1], rental[2], rental[3]);
+    }
+
+    /**
+     * Deletes the rental, releases the movie and subtracts the fee from the balance of
+     * the user within one connection callback.
+     */
+    private boolean giveBack(long id, long movieId, long userId, long feeCents) {
+        boolean deleted = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (PreparedStatement delete = connection.prepareStatement("delete from RENTALS where RENTAL_ID = ?")) {
+                delete.setLong(1, id);
+                if (delete.executeUpdate() == 0) {
+                    return false;
+                }
+            }
+            try (PreparedStatement release = connection.prepareStatement(MovieRepositoryImpl.RELEASE_SQL)) {
+                release.setLong(1, movieId);
+                release.executeUpdate();
+            }
+            addToBalance(connection, userId, -feeCents, 0);
+            return true;
+        });
+        IdentityMap identityMap = IdentityMap.current();
+        evict(identityMap, id);
+        Movie movie = identityMap.get(Movie.class, movieId);
+        if (movie != null) {
+            movie.setRented(false);
+        }
+        return deleted;
+    }
+
 	@Override
 	public void delete(Rental rental) {
 		if(rental == null) throw new IllegalArgumentException();
@@ -114,18 +418,51 @@ public class RentalRepositoryImpl implements RentalRepository {
 	}
 
 	@Override
-	public void deleteById(Long id) {
+	public boolean deleteById(Long id) {
 		if(id == null) throw new IllegalArgumentException();
-        jdbcTemplate.update(
+        int deleted = jdbcTemplate.update(
             "delete from RENTALS where RENTAL_ID = ?",
             id
         );
+        evict(IdentityMap.current(), id);
+        return deleted > 0;
+	}
+
+	@Override
+	public void deleteAllById(Iterable<Long> ids) {
+        List<Long> idList = SqlSupport.toList(ids);
+        SqlSupport.batchUpdate(jdbcTemplate, "delete from RENTALS where RENTAL_ID = ?", idList, (ps, id) -> ps.setLong(1, id));
+
+        IdentityMap identityMap = IdentityMap.current();
+        idList.forEach(id -> evict(identityMap, id));
 	}
 
+    /**
+     * Adds a saved rental to the rentals of its owner if they are loaded already. A list
+     * which is not loaded yet is left alone, it contains the rental once it is loaded.
+     */
+    private static void attach(Rental rental) {
+        List<Rental> rentals = rental.getUser().getRentals();
+        if (LazyList.isLoaded(rentals) && !rentals.contains(rental)) {
+            rentals.add(rental);
+        }
+    }
+
+    /**
+     * Removes a deleted rental from the identity map and invalidates the rentals of its owner.
+     */
+    private static void evict(IdentityMap identityMap, Long id) {
+        Rental known = identityMap.get(Rental.class, id);
+        if (known != null) {
+            LazyList.invalidate(known.getUser().getRentals());
+            identityMap.remove(Rental.class, id);
+        }
+    }
+
 	@Override
 	public boolean existsById(Long id) {
 		if(id == null) throw new IllegalArgumentException();
-		return findById(id).isPresent();
+		return SqlSupport.exists(jdbcTemplate, "RENTALS", "RENTAL_ID", id);
 	}
 
 	@Override
@@ -0,0 +1,107 @@
+package ch.fhnw.edu.rental.persistence.impl;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import ch.fhnw.edu.rental.persistence.Sort;
+
+/**
+ * Builds the statement of a keyset page on a single table. Rows are ordered by the
+ * sort column and the id column; the page starts after the last entity of the previous
+ * page, whose sort key and id are taken from the entity itself. The position is thus
+ * known even if the entity was deleted meanwhile.
+ * <p>
+ * NULL sorts before all values, as in the in-memory repositories: first in ascending
+ * and last in descending order. The keyset predicate handles NULL explicitly, as a
+ * comparison with NULL is never true.
+ *
+ * @param <T> the entity type
+ */
+final class SeekQuery<T> {
+
+    /**
+     * A sortable column and the property of the entity stored in it.
+     */
+    static final class Column<T> {
+        final String name;
+        final Function<T, ?> value;
+
+        Column(String name, Function<T, ?> value) {
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    private final String sql;
+    private final Object[] args;
+
+    /**
+     * @param select the select and from clause, e.g. {@code select * from MOVIES}
+     * @param sortColumns maps the supported sort properties to their columns; the column
+     *        of {@code id} is the primary key
+     * @param after the last entity of the previous page, or null for the first page
+     */
+    SeekQuery(String select, Map<String, Column<T>> sortColumns, Sort sort, T after, int limit) {
+        if (sort == null || limit <= 0) throw new IllegalArgumentException();
+        Column<T> sortColumn = sortColumns.get(sort.getProperty());
+        if (sortColumn == null) {
+            throw new IllegalArgumentException("Unknown sort property " + sort.getProperty());
+        }
+        Column<T> idColumn = sortColumns.get("id");
+        boolean asc = sort.isAscending();
+        String op = asc ? ">" : "<";
+        String dir = asc ? "asc" : "desc";
+        String col = sortColumn.name;
+        String id = idColumn.name;
+
+        StringBuilder sb = new StringBuilder(select);
+        List<Object> params = new ArrayList<>();
+        if (after != null) {
+            Object afterId = idColumn.value.apply(after);
+            if (sortColumn == idColumn) {
+                sb.append(" where ").append(id).append(' ').append(op).append(" ?");
+            } else {
+                Object key = parameter(sortColumn.value.apply(after));
+                if (key == null && asc) {
+                    sb.append(" where (").append(col).append(" is not null or (")
+                      .append(col).append(" is null and ").append(id).append(" > ?))");
+                } else if (key == null) {
+                    sb.append(" where (").append(col).append(" is null and ").append(id).append(" < ?)");
+                } else {
+                    sb.append(" where (").append(col).append(' ').append(op).append(" ?");
+                    if (!asc) {
+                        sb.append(" or ").append(col).append(" is null");
+                    }
+                    sb.append(" or (").append(col).append(" = ? and ").append(id).append(' ').append(op).append(" ?))");
+                    params.add(key);
+                    params.add(key);
+                }
+            }
+            params.add(afterId);
+        }
+        sb.append(" order by ");
+        if (sortColumn != idColumn) {
+            sb.append(col).append(' ').append(dir).append(asc ? " nulls first, " : " nulls last, ");
+        }
+        sb.append(id).append(' ').append(dir).append(" limit ?");
+        params.add(limit);
+
+        this.sql = sb.toString();
+        this.args = params.toArray();
+    }
+
+    private static Object parameter(Object value) {
+        return value instanceof LocalDate ? java.sql.Date.valueOf((LocalDate) value) : value;
+    }
+
+    String getSql() {
+        return sql;
+    }
+
+    Object[] getArgs() {
+        return args;
+    }
+}
@@ -0,0 +1,194 @@
+package ch.fhnw.edu.rental.persistence.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Function;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+
+/**
+ * Helpers for building SQL statements.
+ */
+final class SqlSupport {
+
+    private SqlSupport() {
+    }
+
+    /**
+     * Returns a comma separated list of {@code count} parameter markers for an IN clause.
+     */
+    static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Copies the given ids into a list, rejecting null.
+     *
+     * @throws IllegalArgumentException if ids is null
+     */
+    static <ID> List<ID> toList(Iterable<ID> ids) {
+        if (ids == null) throw new IllegalArgumentException();
+        List<ID> list = new ArrayList<>();
+        ids.forEach(list::add);
+        return list;
+    }
+
+    /**
+     * Executes the given insert statement once per item as a single JDBC batch and
+     * returns the generated keys in the order of the items.
+     */
+    static <T> List<Long> batchInsert(JdbcTemplate jdbcTemplate, String sql, String keyColumn,
+                                      List<T> items, ParameterizedPreparedStatementSetter<T> setter) {
+        if (items.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql, new String[] {keyColumn})) {
+                for (T item : items) {
+                    setter.setValues(ps, item);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                List<Long> keys = new ArrayList<>(items.size());
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    while (rs.next()) {
+                        keys.add(rs.getLong(1));
+                    }
+                }
+                if (keys.size() != items.size()) {
+                    throw new IllegalStateException("Expected " + items.size() + " generated keys, got " + keys.size());
+                }
+                return keys;
+            }
+        });
+    }
+
+    /**
+     * Executes the given statement once per item as a single JDBC batch.
+     */
+    static <T> void batchUpdate(JdbcTemplate jdbcTemplate, String sql,
+                                List<T> items, ParameterizedPreparedStatementSetter<T> setter) {
+        if (!items.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, items, items.size(), setter);
+        }
+    }
+
+    /**
+     * Returns an UPDATE statement of the given columns of {@code table}, in the order of
+     * {@code fields}, followed by the id as last parameter.
+     */
+    static <F extends Enum<F>> String updateSql(String table, String idColumn, Map<F, String> columns, Set<F> fields) {
+        StringJoiner set = new StringJoiner(", ", "update " + table + " set ", " where " + idColumn + " = ?");
+        for (F field : fields) {
+            set.add(columns.get(field) + " = ?");
+        }
+        return set.toString();
+    }
+
+    /**
+     * Executes the changed columns of each tracked entity as UPDATE statements, one JDBC
+     * batch per combination of changed columns. Entities without changes are skipped.
+     */
+    static <T, F extends Enum<F>> void batchUpdateChanged(JdbcTemplate jdbcTemplate, String table, String idColumn,
+                                                           Map<F, String> columns, List<T> items,
+                                                           Function<? super T, Set<F>> dirtyFields,
+                                                           ChangedValueSetter<T, F> setter) {
+        Map<Set<F>, List<T>> byFields = new LinkedHashMap<>();
+        for (T item : items) {
+            Set<F> fields = dirtyFields.apply(item);
+            if (!fields.isEmpty()) {
+                byFields.computeIfAbsent(fields, f -> new ArrayList<>()).add(item);
+            }
+        }
+        byFields.forEach((fields, group) ->
+            batchUpdate(jdbcTemplate, updateSql(table, idColumn, columns, fields), group,
+                (ps, item) -> setter.setValues(ps, item, fields)));
+    }
+
+    /**
+     * Sets the parameters of a statement created by {@link #updateSql}.
+     */
+    interface ChangedValueSetter<T, F extends Enum<F>> {
+        void setValues(PreparedStatement ps, T item, Set<F> fields) throws SQLException;
+    }
+
+    /**
+     * Returns a statement creator for a forward-only, read-only cursor which fetches
+     * {@code fetchSize} rows per round trip.
+     */
+    static PreparedStatementCreator cursor(String sql, int fetchSize, Object... args) {
+        return connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            new ArgumentPreparedStatementSetter(args).setValues(ps);
+            return ps;
+        };
+    }
+
+    /**
+     * Returns a cursor like {@link #cursor} over at most {@code limit} rows of
+     * {@code select} with an id greater than {@code afterId}, ordered by id. Without
+     * {@code afterId} the rows start with the smallest id.
+     */
+    static PreparedStatementCreator pageCursor(String select, String idColumn, Long afterId, int limit, int fetchSize) {
+        return pageCursor(select, "", Collections.emptyList(), idColumn, afterId, limit, fetchSize);
+    }
+
+    /**
+     * Returns a cursor like {@link #pageCursor(String, String, Long, int, int)} which only
+     * returns the rows matching {@code condition}, an empty string for all rows.
+     */
+    static PreparedStatementCreator pageCursor(String select, String condition, List<?> args,
+                                               String idColumn, Long afterId, int limit, int fetchSize) {
+        List<Object> all = new ArrayList<>(args);
+        List<String> conditions = new ArrayList<>();
+        if (!condition.isEmpty()) {
+            conditions.add(condition);
+        }
+        if (afterId != null) {
+            conditions.add(idColumn + " > ?");
+            all.add(afterId);
+        }
+        all.add(limit);
+        String where = conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
+        return cursor(select + where + " order by " + idColumn + " limit ?", Math.min(fetchSize, limit), all.toArray());
+    }
+
+    /**
+     * Returns the given entities in the order of {@code ids}; ids without entity are skipped.
+     */
+    static <T> List<T> inOrder(List<Long> ids, List<T> entities, Function<? super T, Long> idOf) {
+        Map<Long, T> byId = new HashMap<>();
+        entities.forEach(entity -> byId.put(idOf.apply(entity), entity));
+        List<T> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            T entity = byId.get(id);
+            if (entity != null) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether {@code table} has a row with the given id, using the index of the id column.
+     */
+    static boolean exists(JdbcTemplate jdbcTemplate, String table, String idColumn, Object id) {
+        return !jdbcTemplate.queryForList(
+            "select 1 from " + table + " where " + idColumn + " = ? limit 1", Integer.class, id).isEmpty();
+    }
+}
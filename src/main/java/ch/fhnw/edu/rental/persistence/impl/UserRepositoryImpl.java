@@ -4,13 +4,20 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-import ch.fhnw.edu.rental.model.Movie;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
@@ -18,38 +25,79 @@ import org.springframework.stereotype.Component;
 
 import ch.fhnw.edu.rental.model.Rental;
 import ch.fhnw.edu.rental.model.User;
+import ch.fhnw.edu.rental.model.UserBalance;
 import ch.fhnw.edu.rental.persistence.RentalRepository;
+import ch.fhnw.edu.rental.persistence.Sort;
 import ch.fhnw.edu.rental.persistence.UserRepository;
 
 @Component
+@Profile("!memory")
 public class UserRepositoryImpl implements UserRepository {
 
+    private static final Map<String, SeekQuery.Column<User>> SORT_COLUMNS = new HashMap<>();
+    static {
+        SORT_COLUMNS.put("id", new SeekQuery.Column<>("USER_ID", User::getId));
+        SORT_COLUMNS.put("lastName", new SeekQuery.Column<>("USER_NAME", User::getLastName));
+        SORT_COLUMNS.put("firstName", new SeekQuery.Column<>("USER_FIRSTNAME", User::getFirstName));
+    }
+
     private final JdbcTemplate jdbcTemplate;
 	private final RentalRepository rentalRepo;
+	private final int fetchSize;
 
-    public UserRepositoryImpl(JdbcTemplate jdbcTemplate, @Lazy RentalRepository rentalRepo) {
+    public UserRepositoryImpl(JdbcTemplate jdbcTemplate, @Lazy RentalRepository rentalRepo,
+                              @Value("${rental.jdbc.fetch-size:500}") int fetchSize) {
         this.jdbcTemplate = jdbcTemplate;
         this.rentalRepo = rentalRepo;
+        this.fetchSize = fetchSize;
     }
 
     @Override
 	public Optional<User> findById(Long id) {
-        List<User> rental = jdbcTemplate.query(
-            "select * from USERS where USER_ID = ?",
-            (rs, row) -> createUser(rs),
-            id
-        );
+        IdentityMap identityMap = IdentityMap.current();
+        User known = identityMap.get(User.class, id);
+        if (known != null) {
+            return Optional.of(known);
+        }
 
-        if (rental.size() == 0) {
+        List<User> users = findUsers(identityMap, " where u.USER_ID = ?", id);
+
+        if (users.size() == 0) {
             return Optional.empty();
-        } else if (rental.size() > 1) {
-            throw new IllegalStateException("Multiple rental have the same id");
+        } else if (users.size() > 1) {
+            throw new IllegalStateException("Multiple users have the same id");
         } else {
-            return Optional.of(rental.get(0));
+            return Optional.of(users.get(0));
         }
 	}
 
-    private User createUser(ResultSet rs) throws SQLException {
+    /**
+     * Loads the users matching the given condition. Their rentals are loaded on first access.
+     */
+    private List<User> findUsers(IdentityMap identityMap, String condition, Object... args) {
+        return jdbcTemplate.query(
+            "select * from USERS u" + condition + " order by u.USER_ID",
+            (rs, row) -> mapUser(rs, identityMap, true),
+            args
+        );
+    }
+
+    /**
+     * Returns the known instance of the user of the current row, or creates a user with a
+     * lazy rental list.
+     */
+    private User mapUser(ResultSet rs, IdentityMap identityMap, boolean register) throws SQLException {
+        long id = rs.getLong("USER_ID");
+        User user = identityMap.get(User.class, id);
+        if (user == null) {
+            User created = createUser(rs);
+            created.setRentals(new LazyList<>(() -> rentalRepo.findByUser(created)));
+            user = register ? identityMap.put(User.class, id, created) : created;
+        }
+        return user;
+    }
+
+    static User createUser(ResultSet rs) throws SQLException {
 
         long id = rs.getLong("USER_ID");
         String email = rs.getString("USER_EMAIL");
@@ -59,60 +107,185 @@ public class UserRepositoryImpl implements UserRepository {
         User user = new User(userName, firstName);
         user.setEmail(email);
         user.setId(id);
-        user.setRentals(rentalRepo.findByUser(user));
+        user.markClean();
 
         return user;
     }
 
     @Override
 	public List<User> findAll() {
-        return jdbcTemplate.query(
-            "select * from USERS",
-            (rs, row) -> createUser(rs)
+        return findUsers(IdentityMap.current(), "");
+	}
+
+    @Override
+	public void forEach(Consumer<? super User> action) {
+		if(action == null) throw new IllegalArgumentException();
+        IdentityMap identityMap = IdentityMap.current();
+        jdbcTemplate.query(
+            SqlSupport.cursor("select * from USERS order by USER_ID", fetchSize),
+            rs -> {
+                action.accept(mapUser(rs, identityMap, false));
+            }
+        );
+	}
+
+    @Override
+	public void forEachRow(Long afterId, int limit, UserRow action) {
+		if(limit <= 0 || action == null) throw new IllegalArgumentException();
+        jdbcTemplate.query(
+            SqlSupport.pageCursor("select USER_ID, USER_NAME, USER_FIRSTNAME from USERS", "USER_ID", afterId, limit, fetchSize),
+            rs -> {
+                action.accept(rs.getLong(1), rs.getString(2), rs.getString(3));
+            }
         );
 	}
 
+    @Override
+	public List<User> findAllById(Iterable<Long> ids) {
+        IdentityMap identityMap = IdentityMap.current();
+        List<User> result = new ArrayList<>();
+        List<Long> idList = identityMap.resolve(User.class, SqlSupport.toList(ids), result);
+        if (idList.isEmpty()) {
+            return result;
+        }
+        result.addAll(findUsers(identityMap, " where u.USER_ID in (" + SqlSupport.placeholders(idList.size()) + ")", idList.toArray()));
+        return result;
+	}
+
+    @Override
+	public List<User> findPage(User after, int limit, Sort sort) {
+        SeekQuery<User> query = new SeekQuery<>("select * from USERS", SORT_COLUMNS, sort, after, limit);
+        IdentityMap identityMap = IdentityMap.current();
+        return jdbcTemplate.query(query.getSql(), (rs, row) -> mapUser(rs, identityMap, true), query.getArgs());
+	}
+
+    private static final String INSERT_SQL =
+        "insert into users (user_name, user_firstname, user_email) values (?, ?, ?)";
+    private static final String UPDATE_SQL =
+        "update users set user_name = ?, user_firstname = ?, user_email = ? where USER_ID = ?";
+
+    private static final Map<User.Field, String> COLUMNS = new EnumMap<>(User.Field.class);
+    static {
+        COLUMNS.put(User.Field.LAST_NAME, "USER_NAME");
+        COLUMNS.put(User.Field.FIRST_NAME, "USER_FIRSTNAME");
+        COLUMNS.put(User.Field.EMAIL, "USER_EMAIL");
+    }
+
+    private static void setChangedValues(PreparedStatement ps, User user, Set<User.Field> fields) throws SQLException {
+        int index = 1;
+        for (User.Field field : fields) {
+            switch (field) {
+                case LAST_NAME: ps.setString(index++, user.getLastName()); break;
+                case FIRST_NAME: ps.setString(index++, user.getFirstName()); break;
+                case EMAIL: ps.setString(index++, user.getEmail()); break;
+                default: throw new IllegalArgumentException("Unknown field " + field);
+            }
+        }
+        ps.setLong(index, user.getId());
+    }
+
+    private static void setValues(PreparedStatement ps, User user) throws SQLException {
+        ps.setString(1, user.getLastName());
+        ps.setString(2, user.getFirstName());
+        ps.setString(3, user.getEmail());
+
+        if (user.getId() != null) {
+            ps.setLong(4, user.getId());
+        }
+    }
+
 	@Override
 	public User save(User user) {
+        if (user.getId() != null && user.isTracked()) {
+            // only the changed columns are written, nothing if there are none
+            Set<User.Field> fields = user.getDirtyFields();
+            if (!fields.isEmpty()) {
+                jdbcTemplate.update(
+                    SqlSupport.updateSql("USERS", "USER_ID", COLUMNS, fields),
+                    ps -> setChangedValues(ps, user, fields));
+            }
+            user.markClean();
+            return IdentityMap.current().put(User.class, user.getId(), user);
+        }
+
         KeyHolder keyHolder = new GeneratedKeyHolder();
-        String INSERT_SQL = "insert into users (user_name, user_firstname, user_email) values (?, ?, ?);";
+
+        final String SQL = user.getId() == null ? INSERT_SQL : UPDATE_SQL;
+
         jdbcTemplate.update(
             connection -> {
                 PreparedStatement ps =
-                    connection.prepareStatement(INSERT_SQL, new String[] {"rental_id"});
-                ps.setString(1, user.getLastName());
-                ps.setString(2, user.getFirstName());
-                ps.setString(3, user.getEmail());
+                    connection.prepareStatement(SQL, new String[] {"USER_ID"});
+                setValues(ps, user);
                 return ps;
             },
             keyHolder);
 
-        user.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
-		return user;
+        if (user.getId() == null) {
+            user.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        }
+        user.markClean();
+		return IdentityMap.current().put(User.class, user.getId(), user);
+	}
+
+	@Override
+	public List<User> saveAll(Iterable<User> users) {
+        List<User> all = SqlSupport.toList(users);
+        List<User> inserts = all.stream().filter(u -> u.getId() == null).collect(Collectors.toList());
+        List<User> updates = all.stream().filter(u -> u.getId() != null && !u.isTracked()).collect(Collectors.toList());
+        List<User> changes = all.stream().filter(u -> u.getId() != null && u.isTracked()).collect(Collectors.toList());
+
+        List<Long> keys = SqlSupport.batchInsert(jdbcTemplate, INSERT_SQL, "USER_ID", inserts, UserRepositoryImpl::setValues);
+        SqlSupport.batchUpdate(jdbcTemplate, UPDATE_SQL, updates, UserRepositoryImpl::setValues);
+        SqlSupport.batchUpdateChanged(jdbcTemplate, "USERS", "USER_ID", COLUMNS, changes, User::getDirtyFields, UserRepositoryImpl::setChangedValues);
+
+        for (int i = 0; i < inserts.size(); i++) {
+            inserts.get(i).setId(keys.get(i));
+        }
+        IdentityMap identityMap = IdentityMap.current();
+        all.forEach(user -> {
+            user.markClean();
+            identityMap.put(User.class, user.getId(), user);
+        });
+        return all;
 	}
 
 	@Override
 	public void delete(User user) {
 		if(user == null) throw new IllegalArgumentException();
-		for(Rental r : user.getRentals()){
-			rentalRepo.delete(r);
-		}
-        jdbcTemplate.update(
+		deleteById(user.getId());
+	}
+
+	@Override
+	public boolean deleteById(Long id) {
+		if(id == null) throw new IllegalArgumentException();
+        // the rentals of the user are removed by ON DELETE CASCADE
+        int deleted = jdbcTemplate.update(
             "delete from USERS where USER_ID = ?",
-            user.getId()
+            id
         );
+
+        IdentityMap identityMap = IdentityMap.current();
+        identityMap.removeIf(Rental.class, rental -> id.equals(rental.getUser().getId()));
+        identityMap.remove(User.class, id);
+        return deleted > 0;
 	}
 
 	@Override
-	public void deleteById(Long id) {
-		if(id == null) throw new IllegalArgumentException();
-		findById(id).ifPresent(this::delete);
+	public void deleteAllById(Iterable<Long> ids) {
+        List<Long> idList = SqlSupport.toList(ids);
+        SqlSupport.batchUpdate(jdbcTemplate, "delete from USERS where USER_ID = ?", idList, (ps, id) -> ps.setLong(1, id));
+
+        IdentityMap identityMap = IdentityMap.current();
+        Set<Long> deleted = new HashSet<>(idList);
+        identityMap.removeIf(Rental.class, rental -> deleted.contains(rental.getUser().getId()));
+        idList.forEach(id -> identityMap.remove(User.class, id));
 	}
 
 	@Override
 	public boolean existsById(Long id) {
 		if(id == null) throw new IllegalArgumentException();
-        return findById(id).isPresent();
+        return SqlSupport.exists(jdbcTemplate, "USERS", "USER_ID", id);
 	}
 
 	@Override
@@ -125,9 +298,7 @@ public class UserRepositoryImpl implements UserRepository {
         if (lastName == null || lastName.isEmpty()) {
             throw new IllegalArgumentException("No empty name");
         }
-		// TODO use SQL
-        return findAll().stream()
-            .filter(user -> lastName.equals(user.getLastName())).collect(Collectors.toList());
+        return findUsers(IdentityMap.current(), " where u.USER_NAME = ?", lastName);
 	}
 
 	@Override
@@ -135,9 +306,7 @@ public class UserRepositoryImpl implements UserRepository {
         if (firstName == null || firstName.isEmpty()) {
             throw new IllegalArgumentException("No empty firstName");
         }
-        // TODO use SQL
-        return findAll().stream()
-            .filter(user -> firstName.equals(user.getFirstName())).collect(Collectors.toList());
+        return findUsers(IdentityMap.current(), " where u.USER_FIRSTNAME = ?", firstName);
 	}
 
 	@Override
@@ -145,9 +314,33 @@ public class UserRepositoryImpl implements UserRepository {
         if (email == null || email.isEmpty()) {
             throw new IllegalArgumentException("No empty mail");
         }
-        // TODO use SQL
-        return findAll().stream()
-            .filter(user -> email.equals(user.getEmail())).collect(Collectors.toList());
+        return findUsers(IdentityMap.current(), " where u.USER_EMAIL = ?", email);
+	}
+
+	@Override
+	public Optional<User> findOneByEmail(String email) {
+        List<User> users = findByEmail(email);
+
+        if (users.size() == 0) {
+            return Optional.empty();
+        } else if (users.size() > 1) {
+            throw new IllegalStateException("Multiple users have the same email");
+        } else {
+            return Optional.of(users.get(0));
+        }
+	}
+
+	@Override
+	public Optional<UserBalance> findBalance(Long userId) {
+		if(userId == null) throw new IllegalArgumentException();
+        // the outer join tells a user without rentals from a missing user
+        List<UserBalance> balances = jdbcTemplate.query(
+            "select b.BALANCE_CHARGE_CENTS, b.BALANCE_POINTS from USERS u" +
+            " left join USER_BALANCES b on u.USER_ID = b.USER_ID where u.USER_ID = ?",
+            (rs, row) -> new UserBalance(userId, rs.getLong(1), rs.getInt(2)),
+            userId
+        );
+        return balances.isEmpty() ? Optional.empty() : Optional.of(balances.get(0));
 	}
 
 }
@@ -0,0 +1,91 @@
+package ch.fhnw.edu.rental.persistence.memory;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import ch.fhnw.edu.rental.model.Movie;
+import ch.fhnw.edu.rental.persistence.MovieFilter;
+import ch.fhnw.edu.rental.persistence.MovieRepository;
+
+@Component
+@Profile("memory")
+public class InMemoryMovieRepository extends InMemoryRepository<Movie> implements MovieRepository {
+
+    private static final Map<String, Comparator<Movie>> SORT_KEYS = new HashMap<>();
+    static {
+        SORT_KEYS.put("title", Comparator.comparing(Movie::getTitle, Comparator.nullsFirst(Comparator.naturalOrder())));
+        SORT_KEYS.put("releaseDate", Comparator.comparing(Movie::getReleaseDate, Comparator.nullsFirst(Comparator.naturalOrder())));
+    }
+
+    private final MemoryDatabase db;
+
+    InMemoryMovieRepository(MemoryDatabase db) {
+        super(db.movies, SORT_KEYS);
+        this.db = db;
+    }
+
+    @Override
+    public List<Movie> findByTitle(String title) {
+        return findAllById(db.moviesByTitle.get(title));
+    }
+
+    @Override
+    public void forEachRow(MovieFilter filter, Long afterId, int limit, MovieRow action) {
+        if (filter == null || limit <= 0 || action == null) throw new IllegalArgumentException();
+        List<Movie> movies = rowsAfter(afterId, limit,
+            m -> filter.matches(m.getTitle(), m.getReleaseDate(), m.isRented(), m.getPriceCategory()));
+        for (Movie movie : movies) {
+            action.accept(movie.getId(), movie.getTitle(), movie.getReleaseDate(), movie.isRented(), movie.getPriceCategory());
+        }
+    }
+
+    @Override
+    public Movie save(Movie movie) {
+        if (movie == null) throw new IllegalArgumentException();
+        Long categoryId = movie.getPriceCategory().getId();
+        if (categoryId == null || !db.priceCategories.contains(categoryId)) {
+            throw new DataIntegrityViolationException("Unknown price category " + categoryId);
+        }
+        if (movie.getId() == null) {
+            movie = movie.withId(table.nextId());
+        } else if (table.get(movie.getId()) == movie && movie.isTracked() && movie.getDirtyFields().isEmpty()) {
+            // the stored instance is unchanged, there is nothing to index or journal
+            return movie;
+        }
+        db.put(movie);
+        return movie;
+    }
+
+    @Override
+    public boolean claim(Long id) {
+        if (id == null) throw new IllegalArgumentException();
+        return db.claimMovie(id);
+    }
+
+    @Override
+    public boolean release(Long id) {
+        if (id == null) throw new IllegalArgumentException();
+        return db.releaseMovie(id);
+    }
+
+    @Override
+    public void delete(Movie movie) {
+        super.delete(movie);
+        movie.setId(null);
+    }
+
+    @Override
+    public boolean deleteById(Long id) {
+        if (id == null) throw new IllegalArgumentException();
+        if (!db.rentalsByMovie.get(id).isEmpty()) {
+            throw new DataIntegrityViolationException("Movie " + id + " is rented");
+        }
+        return db.removeMovie(id) != null;
+    }
+}
@@ -0,0 +1,65 @@
+package ch.fhnw.edu.rental.persistence.memory;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import ch.fhnw.edu.rental.model.ConfiguredPriceCategory;
+import ch.fhnw.edu.rental.model.Movie;
+import ch.fhnw.edu.rental.model.PriceCategory;
+import ch.fhnw.edu.rental.model.PriceCategoryChildren;
+import ch.fhnw.edu.rental.model.PriceCategoryNewRelease;
+import ch.fhnw.edu.rental.model.PriceCategoryRegular;
+import ch.fhnw.edu.rental.persistence.PriceCategoryRepository;
+
+@Component
+@Profile("memory")
+public class InMemoryPriceCategoryRepository extends InMemoryRepository<PriceCategory> implements PriceCategoryRepository {
+
+    private final MemoryDatabase db;
+
+    InMemoryPriceCategoryRepository(MemoryDatabase db) {
+        super(db.priceCategories, Collections.emptyMap());
+        this.db = db;
+    }
+
+    @Override
+    public Optional<PriceCategory> findByName(String name) {
+        if (name == null) throw new IllegalArgumentException();
+        return table.values().stream()
+            .filter(c -> name.equals(typeName(c)) || name.equals(c.toString()))
+            .findFirst();
+    }
+
+    private static String typeName(PriceCategory category) {
+        if (category instanceof PriceCategoryRegular) return "Regular";
+        if (category instanceof PriceCategoryChildren) return "Children";
+        if (category instanceof PriceCategoryNewRelease) return "NewRelease";
+        if (category instanceof ConfiguredPriceCategory) return ((ConfiguredPriceCategory) category).getName();
+        throw new IllegalArgumentException("Unkown price cateogry");
+    }
+
+    @Override
+    public PriceCategory save(PriceCategory category) {
+        if (category == null) throw new IllegalArgumentException();
+        if (category.getId() == null) {
+            category.setId(table.nextId());
+        }
+        db.put(category);
+        return category;
+    }
+
+    @Override
+    public boolean deleteById(Long id) {
+        if (id == null) throw new IllegalArgumentException();
+        for (Movie movie : db.movies.values()) {
+            if (id.equals(movie.getPriceCategory().getId())) {
+                throw new DataIntegrityViolationException("Price category " + id + " is used by movie " + movie.getId());
+            }
+        }
+        return db.removePriceCategory(id) != null;
+    }
+}
@@ -0,0 +1,209 @@
+package ch.fhnw.edu.rental.persistence.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import ch.fhnw.edu.rental.model.Movie;
+import ch.fhnw.edu.rental.model.Rental;
+import ch.fhnw.edu.rental.model.User;
+import ch.fhnw.edu.rental.persistence.RentalColumns;
+import ch.fhnw.edu.rental.persistence.RentalRepository;
+
+/**
+ * The rental lists of the stored users are kept in sync by the {@link MemoryDatabase}:
+ * a saved rental is added to the list of its owner, a deleted one is removed from it.
+ */
+@Component
+@Profile("memory")
+public class InMemoryRentalRepository extends InMemoryRepository<Rental> implements RentalRepository {
+
+    private static final Map<String, Comparator<Rental>> SORT_KEYS = new HashMap<>();
+    static {
+        SORT_KEYS.put("rentalDate", Comparator.comparing(Rental::getRentalDate, Comparator.nullsFirst(Comparator.naturalOrder())));
+    }
+
+    private final MemoryDatabase db;
+
+    InMemoryRentalRepository(MemoryDatabase db) {
+        super(db.rentals, SORT_KEYS);
+        this.db = db;
+    }
+
+    @Override
+    public List<Rental> findByUser(User user) {
+        if (user == null) throw new IllegalArgumentException();
+        return findAllById(db.rentalsByUser.get(user.getId()));
+    }
+
+    @Override
+    public long countByUserId(Long userId) {
+        if (userId == null) throw new IllegalArgumentException();
+        return db.rentalsByUser.get(userId).size();
+    }
+
+    @Override
+    public void forEachRow(Long afterId, int limit, RentalRow action) {
+        if (limit <= 0 || action == null) throw new IllegalArgumentException();
+        rowsAfter(afterId, limit).forEach(rental -> accept(rental, action));
+    }
+
+    @Override
+    public void forEachRowOfUser(Long userId, RentalRow action) {
+        if (userId == null || action == null) throw new IllegalArgumentException();
+        findAllById(db.rentalsByUser.get(userId)).forEach(rental -> accept(rental, action));
+    }
+
+    @Override
+    public RentalColumns loadColumns() {
+        List<Rental> rentals = table.values();
+        rentals.sort(Comparator.comparing((Rental r) -> r.getUser().getId()).thenComparing(Rental::getId));
+        RentalColumns columns = new RentalColumns(rentals.size());
+        for (Rental rental : rentals) {
+            Movie movie = rental.getMovie();
+            columns.add(rental.getUser().getId(), movie.getId(), movie.getPriceCategory().getId(),
+                rental.getRentalDays(), rental.getRentalDate());
+        }
+        return columns;
+    }
+
+    private static void accept(Rental rental, RentalRow action) {
+        User user = rental.getUser();
+        Movie movie = rental.getMovie();
+        action.accept(rental.getId(), rental.getRentalDays(), rental.getRentalDate(), user.getLastName(),
+            user.getFirstName(), movie.getTitle(), movie.getPriceCategory());
+    }
+
+    /**
+     * Always stores the rental under a new id, like the SQL repository which always inserts.
+     */
+    @Override
+    public Rental save(Rental rental) {
+        if (rental == null) throw new IllegalArgumentException();
+        checkReferences(rental);
+        rental.setId(table.nextId());
+        rental.charge();
+        db.put(rental);
+        return rental;
+    }
+
+    @Override
+    public Optional<Long> findMovieIdByRentalId(Long id) {
+        if (id == null) throw new IllegalArgumentException();
+        return Optional.ofNullable(table.get(id)).map(rental -> rental.getMovie().getId());
+    }
+
+    @Override
+    public Optional<Rental> rent(Rental rental) {
+        if (rental == null) throw new IllegalArgumentException();
+        checkReferences(rental);
+        Long movieId = rental.getMovie().getId();
+        if (!db.claimMovie(movieId)) {
+            return Optional.empty();
+        }
+        try {
+            rental.setId(table.nextId());
+            rental.charge();
+            db.put(rental);
+            addToBalance(rental);
+        } catch (RuntimeException e) {
+            undo(Collections.singletonList(rental), Collections.singletonList(movieId));
+            throw e;
+        }
+        return Optional.of(rental);
+    }
+
+    @Override
+    public boolean rentAll(List<Rental> rentals) {
+        if (rentals == null) throw new IllegalArgumentException();
+        rentals.forEach(this::checkReferences);
+        List<Long> claimed = new ArrayList<>();
+        for (Rental rental : rentals) {
+            Long movieId = rental.getMovie().getId();
+            if (!db.claimMovie(movieId)) {
+                // there is no rollback, so the claims made so far are undone here
+                claimed.forEach(db::releaseMovie);
+                return false;
+            }
+            claimed.add(movieId);
+        }
+        try {
+            for (Rental rental : rentals) {
+                rental.setId(table.nextId());
+                rental.charge();
+                db.put(rental);
+                addToBalance(rental);
+            }
+        } catch (RuntimeException e) {
+            undo(rentals, claimed);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the stored ones of the given rentals and releases the claimed movies after
+     * a failed rent. There is no rollback, so without this the movies would stay rented
+     * without a rental and could never be rented again.
+     */
+    private void undo(List<Rental> rentals, List<Long> claimed) {
+        for (Rental rental : rentals) {
+            if (rental.getId() != null && table.contains(rental.getId())) {
+                db.removeRental(rental.getId());
+            }
+        }
+        claimed.forEach(db::releaseMovie);
+    }
+
+    @Override
+    public boolean giveBack(Rental rental) {
+        if (rental == null) throw new IllegalArgumentException();
+        return giveBackById(rental.getId());
+    }
+
+    @Override
+    public boolean giveBackById(Long id) {
+        if (id == null) throw new IllegalArgumentException();
+        Rental removed = db.removeRental(id);
+        if (removed == null) {
+            return false;
+        }
+        db.releaseMovie(removed.getMovie().getId());
+        // the points are kept
+        db.addToBalance(removed.getUser().getId(), -removed.charge(), 0);
+        return true;
+    }
+
+    @Override
+    public boolean giveBackByMovieId(Long movieId) {
+        if (movieId == null) throw new IllegalArgumentException();
+        List<Long> ids = db.rentalsByMovie.get(movieId);
+        return !ids.isEmpty() && giveBackById(ids.get(0));
+    }
+
+    private void addToBalance(Rental rental) {
+        db.addToBalance(rental.getUser().getId(), rental.charge(), rental.getFrequentRenterPoints());
+    }
+
+    private void checkReferences(Rental rental) {
+        Long userId = rental.getUser().getId();
+        Long movieId = rental.getMovie().getId();
+        if (userId == null || !db.users.contains(userId) || movieId == null || !db.movies.contains(movieId)) {
+            throw new DataIntegrityViolationException("Unknown user or movie of rental");
+        }
+    }
+
+    @Override
+    public boolean deleteById(Long id) {
+        if (id == null) throw new IllegalArgumentException();
+        return db.removeRental(id) != null;
+    }
+}
@@ -0,0 +1,140 @@
+package ch.fhnw.edu.rental.persistence.memory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import ch.fhnw.edu.rental.persistence.Repository;
+import ch.fhnw.edu.rental.persistence.Sort;
+
+/**
+ * Operations common to all in-memory repositories. Subclasses implement saving and
+ * deleting, which have to maintain the indexes of their table.
+ *
+ * @param <T> the entity type
+ */
+abstract class InMemoryRepository<T> implements Repository<T, Long> {
+
+    protected final Table<T> table;
+    private final Map<String, Comparator<T>> sortKeys;
+
+    /**
+     * @param sortKeys the order of each supported sort property except {@code id}; null
+     *        sorts first, like in the SQL repositories
+     */
+    InMemoryRepository(Table<T> table, Map<String, Comparator<T>> sortKeys) {
+        this.table = table;
+        this.sortKeys = sortKeys;
+    }
+
+    @Override
+    public Optional<T> findById(Long id) {
+        if (id == null) throw new IllegalArgumentException();
+        return Optional.ofNullable(table.get(id));
+    }
+
+    @Override
+    public List<T> findAll() {
+        return table.values();
+    }
+
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        if (action == null) throw new IllegalArgumentException();
+        table.forEach(action);
+    }
+
+    @Override
+    public List<T> findAllById(Iterable<Long> ids) {
+        if (ids == null) throw new IllegalArgumentException();
+        List<T> result = new ArrayList<>();
+        for (Long id : ids) {
+            T row = table.get(id);
+            if (row != null) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<T> findPage(T after, int limit, Sort sort) {
+        if (sort == null || limit <= 0) throw new IllegalArgumentException();
+        Comparator<T> byId = Comparator.comparing(table::idOf);
+        Comparator<T> order;
+        if ("id".equals(sort.getProperty())) {
+            order = byId;
+        } else if (sortKeys.containsKey(sort.getProperty())) {
+            order = sortKeys.get(sort.getProperty()).thenComparing(byId);
+        } else {
+            throw new IllegalArgumentException("Unknown sort property " + sort.getProperty());
+        }
+        Comparator<T> direction = sort.isAscending() ? order : order.reversed();
+
+        return table.values().stream()
+            .filter(row -> after == null || direction.compare(row, after) > 0)
+            .sorted(direction)
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns at most {@code limit} rows with an id greater than {@code afterId} (all
+     * rows if null), ordered by id; used for the row projections.
+     */
+    protected List<T> rowsAfter(Long afterId, int limit) {
+        return rowsAfter(afterId, limit, row -> true);
+    }
+
+    /**
+     * Returns the rows like {@link #rowsAfter(Long, int)}, but only those matching the
+     * given condition.
+     */
+    protected List<T> rowsAfter(Long afterId, int limit, Predicate<? super T> condition) {
+        return table.values().stream()
+            .filter(row -> afterId == null || table.idOf(row) > afterId)
+            .filter(condition)
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<T> saveAll(Iterable<T> entities) {
+        if (entities == null) throw new IllegalArgumentException();
+        List<T> result = new ArrayList<>();
+        for (T entity : entities) {
+            result.add(save(entity));
+        }
+        return result;
+    }
+
+    @Override
+    public void delete(T entity) {
+        if (entity == null) throw new IllegalArgumentException();
+        deleteById(table.idOf(entity));
+    }
+
+    @Override
+    public void deleteAllById(Iterable<Long> ids) {
+        if (ids == null) throw new IllegalArgumentException();
+        for (Long id : ids) {
+            deleteById(id);
+        }
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        if (id == null) throw new IllegalArgumentException();
+        return table.contains(id);
+    }
+
+    @Override
+    public long count() {
+        return table.size();
+    }
+}
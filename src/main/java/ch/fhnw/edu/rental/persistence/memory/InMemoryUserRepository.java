@@ -0,0 +1,112 @@
+package ch.fhnw.edu.rental.persistence.memory;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import ch.fhnw.edu.rental.model.User;
+import ch.fhnw.edu.rental.model.UserBalance;
+import ch.fhnw.edu.rental.persistence.UserRepository;
+
+@Component
+@Profile("memory")
+public class InMemoryUserRepository extends InMemoryRepository<User> implements UserRepository {
+
+    private static final Map<String, Comparator<User>> SORT_KEYS = new HashMap<>();
+    static {
+        SORT_KEYS.put("lastName", Comparator.comparing(User::getLastName, Comparator.nullsFirst(Comparator.naturalOrder())));
+        SORT_KEYS.put("firstName", Comparator.comparing(User::getFirstName, Comparator.nullsFirst(Comparator.naturalOrder())));
+    }
+
+    private final MemoryDatabase db;
+
+    InMemoryUserRepository(MemoryDatabase db) {
+        super(db.users, SORT_KEYS);
+        this.db = db;
+    }
+
+    @Override
+    public Optional<UserBalance> findBalance(Long userId) {
+        if (userId == null) throw new IllegalArgumentException();
+        if (!db.users.contains(userId)) {
+            return Optional.empty();
+        }
+        UserBalance balance = db.balances.get(userId);
+        return Optional.of(balance == null ? UserBalance.empty(userId) : balance);
+    }
+
+    @Override
+    public void forEachRow(Long afterId, int limit, UserRow action) {
+        if (limit <= 0 || action == null) throw new IllegalArgumentException();
+        for (User user : rowsAfter(afterId, limit)) {
+            action.accept(user.getId(), user.getLastName(), user.getFirstName());
+        }
+    }
+
+    @Override
+    public User save(User user) {
+        if (user == null) throw new IllegalArgumentException();
+        for (Long other : db.usersByEmail.get(user.getEmail())) {
+            if (!other.equals(user.getId())) {
+                throw new DuplicateKeyException("Email " + user.getEmail() + " is already used");
+            }
+        }
+        if (user.getId() == null) {
+            user.setId(table.nextId());
+        } else if (table.get(user.getId()) == user && user.isTracked() && user.getDirtyFields().isEmpty()) {
+            // the stored instance is unchanged, there is nothing to index or journal
+            return user;
+        }
+        db.put(user);
+        return user;
+    }
+
+    @Override
+    public boolean deleteById(Long id) {
+        if (id == null) throw new IllegalArgumentException();
+        return db.removeUser(id) != null;
+    }
+
+    @Override
+    public List<User> findByLastName(String lastName) {
+        if (lastName == null || lastName.isEmpty()) {
+            throw new IllegalArgumentException("No empty name");
+        }
+        return findAllById(db.usersByLastName.get(lastName));
+    }
+
+    @Override
+    public List<User> findByFirstName(String firstName) {
+        if (firstName == null || firstName.isEmpty()) {
+            throw new IllegalArgumentException("No empty firstName");
+        }
+        return findAllById(db.usersByFirstName.get(firstName));
+    }
+
+    @Override
+    public List<User> findByEmail(String email) {
+        if (email == null || email.isEmpty()) {
+            throw new IllegalArgumentException("No empty mail");
+        }
+        return findAllById(db.usersByEmail.get(email));
+    }
+
+    @Override
+    public Optional<User> findOneByEmail(String email) {
+        List<User> users = findByEmail(email);
+
+        if (users.size() == 0) {
+            return Optional.empty();
+        } else if (users.size() > 1) {
+            throw new IllegalStateException("Multiple users have the same email");
+        } else {
+            return Optional.of(users.get(0));
+        }
+    }
+}
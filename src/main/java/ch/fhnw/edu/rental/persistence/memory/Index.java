@@ -0,0 +1,68 @@
+package ch.fhnw.edu.rental.persistence.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary index which maps a key (e.g. a title) to the ids of the rows with that key.
+ * The index remembers the key of every row, so a row can be re-indexed after its key
+ * changed on the shared instance.
+ *
+ * @param <K> the key type
+ */
+final class Index<K> {
+
+    private final ConcurrentHashMap<K, Set<Long>> ids = new ConcurrentHashMap<>();
+    private final LongMap<K> keys = new LongMap<>();
+
+    /**
+     * Indexes the row with the given id under {@code key}; a null key removes the row.
+     */
+    void put(long id, K key) {
+        K old = key == null ? keys.remove(id) : keys.put(id, key);
+        if (old != null && !old.equals(key)) {
+            unlink(old, id);
+        }
+        if (key != null) {
+            ids.compute(key, (k, set) -> {
+                Set<Long> result = set != null ? set : ConcurrentHashMap.newKeySet();
+                result.add(id);
+                return result;
+            });
+        }
+    }
+
+    void remove(long id) {
+        K old = keys.remove(id);
+        if (old != null) {
+            unlink(old, id);
+        }
+    }
+
+    private void unlink(K key, long id) {
+        ids.computeIfPresent(key, (k, set) -> {
+            set.remove(id);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * Returns the ids of the rows with the given key in ascending order.
+     */
+    List<Long> get(K key) {
+        Set<Long> set = key == null ? null : ids.get(key);
+        if (set == null) {
+            return Collections.emptyList();
+        }
+        List<Long> result = new ArrayList<>(set);
+        Collections.sort(result);
+        return result;
+    }
+
+    boolean contains(K key) {
+        return key != null && ids.containsKey(key);
+    }
+}
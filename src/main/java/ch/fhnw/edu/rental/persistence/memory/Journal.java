@@ -0,0 +1,457 @@
+package ch.fhnw.edu.rental.persistence.memory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Write-ahead journal of the in-memory store. It is enabled by setting
+ * {@code rental.memory.journal.directory}; without it the store is volatile.
+ * <p>
+ * Every change is appended to the current log segment ({@code journal-N.log}) as a frame
+ * of length, CRC32 and a {@link JournalCodec} record. A single writer thread collects
+ * the frames of all threads and writes them with one {@code fsync} (group commit).
+ * Inside a transaction the caller waits for durability when the transaction commits,
+ * outside of one on every append.
+ * <p>
+ * After {@code rental.memory.journal.snapshot-interval} records the writer switches to
+ * a new segment and a background thread writes a snapshot ({@code snapshot-N.snap}) of
+ * all tables through a memory-mapped file. The snapshot is fuzzy: it may already contain
+ * changes of segment N, which is harmless because replaying records is idempotent. Once
+ * the snapshot is complete, older segments and snapshots are deleted. A failed snapshot
+ * is logged and counted; the segments are kept and the next rotation tries again.
+ * <p>
+ * On startup the latest snapshot is mapped and loaded, and the following segments are
+ * replayed. A torn frame at the end of a segment is cut off. When the application shuts
+ * down, a final snapshot is written so that the next start only has to map it.
+ */
+@Component
+@Profile("memory")
+class Journal {
+
+    private static final Pattern SEGMENT = Pattern.compile("journal-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d+)\\.snap");
+    private static final int SNAPSHOT_MAGIC = 0x4D52534E;
+    private static final int SNAPSHOT_CHUNK = 16 << 20;
+
+    private final Log log = LogFactory.getLog(this.getClass());
+
+    private final Path directory;
+    private final long snapshotInterval;
+    private final AtomicLong snapshotFailures = new AtomicLong();
+
+    private final Object lock = new Object();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appended;
+    private long durable;
+    private IOException failure;
+    private boolean closed;
+
+    private MemoryDatabase db;
+    private FileChannel channel;
+    private long segment;
+    private long recordsInSegment;
+    private Thread writer;
+    private Thread snapshotter;
+
+    Journal(@Value("${rental.memory.journal.directory:}") String directory,
+            @Value("${rental.memory.journal.snapshot-interval:100000}") long snapshotInterval) {
+        this.directory = directory.isEmpty() ? null : Paths.get(directory);
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Loads the latest snapshot and replays the log segments following it.
+     *
+     * @return false if the journal holds no data at all
+     */
+    boolean recover(MemoryDatabase db) {
+        if (!isEnabled()) {
+            return false;
+        }
+        try {
+            Files.createDirectories(directory);
+            TreeMap<Long, Path> snapshots = files(SNAPSHOT);
+            TreeMap<Long, Path> segments = files(SEGMENT);
+
+            long from = 0;
+            if (!snapshots.isEmpty()) {
+                from = snapshots.lastKey();
+                loadSnapshot(snapshots.lastEntry().getValue(), db);
+            }
+            for (Path log : segments.tailMap(from, true).values()) {
+                replay(log, db);
+            }
+            segment = Math.max(from, segments.isEmpty() ? 0 : segments.lastKey()) + 1;
+            return !snapshots.isEmpty() || !segments.isEmpty();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Could not recover journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Opens a new log segment and starts the writer thread.
+     */
+    void start(MemoryDatabase db) {
+        if (!isEnabled()) {
+            return;
+        }
+        this.db = db;
+        try {
+            channel = openSegment(segment);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Could not open journal in " + directory, e);
+        }
+        writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Appends a record. Outside of a transaction the call returns once it is durable.
+     */
+    void append(byte[] record) {
+        if (!isEnabled()) {
+            return;
+        }
+        long sequence;
+        synchronized (lock) {
+            checkFailure();
+            if (closed) {
+                throw new DataAccessResourceFailureException("Journal is closed");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(record, 0, record.length);
+            ByteBuffer header = ByteBuffer.allocate(8).putInt(record.length).putInt((int) crc.getValue());
+            pending.write(header.array(), 0, 8);
+            pending.write(record, 0, record.length);
+            sequence = ++appended;
+            lock.notifyAll();
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            await(sequence);
+        }
+    }
+
+    /**
+     * Waits until all records appended so far are durable.
+     */
+    void sync() {
+        if (!isEnabled()) {
+            return;
+        }
+        long sequence;
+        synchronized (lock) {
+            sequence = appended;
+        }
+        await(sequence);
+    }
+
+    private void await(long sequence) {
+        synchronized (lock) {
+            while (durable < sequence) {
+                checkFailure();
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DataAccessResourceFailureException("Interrupted while waiting for the journal", e);
+                }
+            }
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new DataAccessResourceFailureException("Journal write failed", failure);
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            byte[] batch;
+            long upTo;
+            synchronized (lock) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending.toByteArray();
+                pending = new ByteArrayOutputStream();
+                recordsInSegment += appended - durable;
+                upTo = appended;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                if (recordsInSegment >= snapshotInterval) {
+                    rotate();
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+            synchronized (lock) {
+                durable = upTo;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Switches to a new segment and writes a snapshot starting at it in the background.
+     * Called by the writer thread only.
+     */
+    private void rotate() throws IOException {
+        if (snapshotter != null && snapshotter.isAlive()) {
+            return;
+        }
+        channel.close();
+        channel = openSegment(++segment);
+        recordsInSegment = 0;
+
+        long start = segment;
+        snapshotter = new Thread(() -> {
+            try {
+                writeSnapshot(start);
+            } catch (IOException | RuntimeException e) {
+                // the segments are kept, so nothing is lost, but they pile up until a snapshot succeeds
+                snapshotFailures.incrementAndGet();
+                log.error("Could not write snapshot " + start + " in " + directory, e);
+            }
+        }, "journal-snapshot");
+        snapshotter.setDaemon(true);
+        snapshotter.start();
+    }
+
+    /**
+     * Returns the number of background snapshots which failed so far.
+     */
+    long getSnapshotFailures() {
+        return snapshotFailures.get();
+    }
+
+    /**
+     * Flushes all pending records, writes a final snapshot and stops the writer thread.
+     */
+    @PreDestroy
+    void close() throws IOException, InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        writer.join();
+        if (snapshotter != null) {
+            snapshotter.join();
+        }
+        channel.close();
+        if (failure == null) {
+            writeSnapshot(segment + 1);
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(directory.resolve(String.format("journal-%019d.log", number)),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private TreeMap<Long, Path> files(Pattern pattern) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (Stream<Path> list = Files.list(directory)) {
+            list.forEach(path -> {
+                Matcher m = pattern.matcher(path.getFileName().toString());
+                if (m.matches()) {
+                    files.put(Long.parseLong(m.group(1)), path);
+                }
+            });
+        }
+        return files;
+    }
+
+    /**
+     * Replays the frames of a log segment and truncates a torn frame at its end.
+     */
+    private void replay(Path log, MemoryDatabase db) throws IOException {
+        try (FileChannel in = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) in.size());
+            while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+                // read the whole segment, its size is bounded by the snapshot interval
+            }
+            buffer.flip();
+            int valid = readFrames(buffer, db, false);
+            if (valid < in.size()) {
+                in.truncate(valid);
+            }
+        }
+    }
+
+    /**
+     * Applies all complete frames of the buffer and returns the position after the last
+     * one. A frame length of 0 marks the end, as in the zero-filled tail of a snapshot.
+     */
+    private static int readFrames(ByteBuffer buffer, MemoryDatabase db, boolean snapshot) {
+        while (buffer.remaining() >= 8) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+            CRC32 crc = new CRC32();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(start);
+                break;
+            }
+            JournalCodec.apply(record, db, snapshot);
+            buffer.position(start + 8 + length);
+        }
+        return buffer.position();
+    }
+
+    private void loadSnapshot(Path snapshot, MemoryDatabase db) throws IOException {
+        try (FileChannel in = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (buffer.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot: " + snapshot);
+            }
+            db.priceCategories.advance(buffer.getLong());
+            db.movies.advance(buffer.getLong());
+            db.users.advance(buffer.getLong());
+            db.rentals.advance(buffer.getLong());
+            readFrames(buffer, db, true);
+        }
+    }
+
+    /**
+     * Writes all tables to {@code snapshot-<start>.snap} and removes the files it replaces.
+     */
+    private void writeSnapshot(long start) throws IOException {
+        Path tmp = directory.resolve(String.format("snapshot-%019d.tmp", start));
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedWriter writer = new MappedWriter(out);
+            ByteBuffer header = ByteBuffer.allocate(36).putInt(SNAPSHOT_MAGIC)
+                .putLong(db.priceCategories.sequence())
+                .putLong(db.movies.sequence())
+                .putLong(db.users.sequence())
+                .putLong(db.rentals.sequence());
+            writer.write(header.array());
+            // referenced rows first, so that the references can be resolved on loading
+            db.priceCategories.forEach(c -> writer.frame(JournalCodec.put(c)));
+            db.movies.forEach(m -> writer.frame(JournalCodec.put(m)));
+            db.users.forEach(u -> writer.frame(JournalCodec.put(u)));
+            db.rentals.forEach(r -> writer.frame(JournalCodec.put(r)));
+            db.balances.forEach(b -> writer.frame(JournalCodec.put(b)));
+            writer.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(tmp, directory.resolve(String.format("snapshot-%019d.snap", start)), StandardCopyOption.ATOMIC_MOVE);
+
+        List<Path> obsolete = new ArrayList<>(files(SEGMENT).headMap(start).values());
+        obsolete.addAll(files(SNAPSHOT).headMap(start).values());
+        for (Path path : obsolete) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Writes a file through a sequence of memory-mapped chunks.
+     */
+    private static final class MappedWriter {
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+        private long position;
+
+        MappedWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void frame(byte[] record) {
+            CRC32 crc = new CRC32();
+            crc.update(record, 0, record.length);
+            ensure(8 + record.length);
+            buffer.putInt(record.length).putInt((int) crc.getValue()).put(record);
+        }
+
+        void write(byte[] bytes) {
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void ensure(int bytes) {
+            if (buffer != null && buffer.remaining() >= bytes) {
+                return;
+            }
+            try {
+                if (buffer != null) {
+                    buffer.force();
+                    position += buffer.position();
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(SNAPSHOT_CHUNK, bytes));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Forces the written chunks to disk. The unused rest of the last chunk stays
+         * zero-filled, which ends the frames; the file is not truncated while mapped.
+         */
+        void finish() throws IOException {
+            if (buffer != null) {
+                buffer.force();
+            }
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package ch.fhnw.edu.rental.persistence.memory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ch.fhnw.edu.rental.model.ConfiguredPriceCategory;
+import ch.fhnw.edu.rental.model.Movie;
+import ch.fhnw.edu.rental.model.PriceCategory;
+import ch.fhnw.edu.rental.model.PriceCategoryChildren;
+import ch.fhnw.edu.rental.model.PriceCategoryNewRelease;
+import ch.fhnw.edu.rental.model.PriceCategoryRegular;
+import ch.fhnw.edu.rental.model.Rental;
+import ch.fhnw.edu.rental.model.TariffRules;
+import ch.fhnw.edu.rental.model.User;
+import ch.fhnw.edu.rental.model.UserBalance;
+
+/**
+ * Binary encoding of the journal records. A record is one byte identifying the kind
+ * followed by the fields; dates are stored as epoch days, strings as a length prefixed
+ * UTF-8 sequence where length -1 denotes null. Snapshots use the same records.
+ */
+final class JournalCodec {
+
+    private static final Log log = LogFactory.getLog(JournalCodec.class);
+
+    private static final byte PUT_PRICE_CATEGORY = 1;
+    private static final byte PUT_MOVIE = 2;
+    private static final byte PUT_USER = 3;
+    private static final byte PUT_RENTAL = 4;
+    private static final byte DELETE_PRICE_CATEGORY = 5;
+    private static final byte DELETE_MOVIE = 6;
+    private static final byte DELETE_USER = 7;
+    private static final byte DELETE_RENTAL = 8;
+    // a price category with its tariff rules; PUT_PRICE_CATEGORY is still read from older journals
+    private static final byte PUT_PRICE_CATEGORY_RULES = 9;
+    private static final byte PUT_BALANCE = 10;
+    // a rental with the fee charged for it; PUT_RENTAL is still read from older journals
+    private static final byte PUT_CHARGED_RENTAL = 11;
+
+    private static final byte REGULAR = 1;
+    private static final byte CHILDREN = 2;
+    private static final byte NEW_RELEASE = 3;
+    private static final byte CONFIGURED = 4;
+
+    private JournalCodec() {
+    }
+
+    static byte[] put(PriceCategory category) {
+        return encode(out -> {
+            out.writeByte(PUT_PRICE_CATEGORY_RULES);
+            out.writeLong(category.getId());
+            if (category instanceof PriceCategoryRegular) out.writeByte(REGULAR);
+            else if (category instanceof PriceCategoryChildren) out.writeByte(CHILDREN);
+            else if (category instanceof PriceCategoryNewRelease) out.writeByte(NEW_RELEASE);
+            else if (category instanceof ConfiguredPriceCategory) {
+                out.writeByte(CONFIGURED);
+                writeString(out, ((ConfiguredPriceCategory) category).getName());
+            }
+            else throw new IllegalArgumentException("Unkown price cateogry");
+            TariffRules rules = category.getRules();
+            out.writeLong(rules.getBaseCents());
+            out.writeInt(rules.getIncludedDays());
+            out.writeLong(rules.getDayCents());
+            out.writeInt(rules.getPoints());
+            out.writeInt(rules.getBonusDays());
+            out.writeInt(rules.getBonusPoints());
+        });
+    }
+
+    static byte[] put(Movie movie) {
+        return encode(out -> {
+            out.writeByte(PUT_MOVIE);
+            out.writeLong(movie.getId());
+            writeString(out, movie.getTitle());
+            out.writeLong(movie.getReleaseDate().toEpochDay());
+            out.writeBoolean(movie.isRented());
+            out.writeLong(movie.getPriceCategory().getId());
+        });
+    }
+
+    static byte[] put(User user) {
+        return encode(out -> {
+            out.writeByte(PUT_USER);
+            out.writeLong(user.getId());
+            writeString(out, user.getLastName());
+            writeString(out, user.getFirstName());
+            writeString(out, user.getEmail());
+        });
+    }
+
+    static byte[] put(Rental rental) {
+        return encode(out -> {
+            out.writeByte(PUT_CHARGED_RENTAL);
+            out.writeLong(rental.getId());
+            out.writeLong(rental.getUser().getId());
+            out.writeLong(rental.getMovie().getId());
+            out.writeLong(rental.getRentalDate().toEpochDay());
+            out.writeInt(rental.getRentalDays());
+            out.writeLong(rental.charge());
+        });
+    }
+
+    static byte[] put(UserBalance balance) {
+        return encode(out -> {
+            out.writeByte(PUT_BALANCE);
+            out.writeLong(balance.getUserId());
+            out.writeLong(balance.getChargeCents());
+            out.writeInt(balance.getFrequentRenterPoints());
+        });
+    }
+
+    static byte[] deletePriceCategory(long id) {
+        return delete(DELETE_PRICE_CATEGORY, id);
+    }
+
+    static byte[] deleteMovie(long id) {
+        return delete(DELETE_MOVIE, id);
+    }
+
+    static byte[] deleteUser(long id) {
+        return delete(DELETE_USER, id);
+    }
+
+    static byte[] deleteRental(long id) {
+        return delete(DELETE_RENTAL, id);
+    }
+
+    private static byte[] delete(byte kind, long id) {
+        return encode(out -> {
+            out.writeByte(kind);
+            out.writeLong(id);
+        });
+    }
+
+    /**
+     * Applies the record in {@code in} to the database without journaling it again.
+     * Rows referring to a missing row are skipped. In a snapshot this happens for rows
+     * which were created while it was written, and the log replays them; in the log it
+     * loses the row, which is logged.
+     *
+     * @param snapshot whether the record is part of a snapshot
+     */
+    static void apply(ByteBuffer in, MemoryDatabase db, boolean snapshot) {
+        byte kind = in.get();
+        long id = in.getLong();
+        switch (kind) {
+            case PUT_PRICE_CATEGORY: {
+                byte type = in.get();
+                PriceCategory category;
+                switch (type) {
+                    case REGULAR: category = new PriceCategoryRegular(); break;
+                    case CHILDREN: category = new PriceCategoryChildren(); break;
+                    case NEW_RELEASE: category = new PriceCategoryNewRelease(); break;
+                    default: throw new IllegalStateException("Unknown price category type " + type);
+                }
+                category.setId(id);
+                db.applyPut(category);
+                break;
+            }
+            case PUT_PRICE_CATEGORY_RULES: {
+                byte type = in.get();
+                String name = type == CONFIGURED ? readString(in) : null;
+                TariffRules rules = TariffRules.of(in.getLong(), in.getInt(), in.getLong(),
+                    in.getInt(), in.getInt(), in.getInt());
+                PriceCategory category;
+                switch (type) {
+                    case REGULAR: category = new PriceCategoryRegular(rules); break;
+                    case CHILDREN: category = new PriceCategoryChildren(rules); break;
+                    case NEW_RELEASE: category = new PriceCategoryNewRelease(rules); break;
+                    case CONFIGURED: category = new ConfiguredPriceCategory(name, rules); break;
+                    default: throw new IllegalStateException("Unknown price category type " + type);
+                }
+                category.setId(id);
+                db.applyPut(category);
+                break;
+            }
+            case PUT_MOVIE: {
+                String title = readString(in);
+                LocalDate releaseDate = LocalDate.ofEpochDay(in.getLong());
+                boolean rented = in.get() != 0;
+                PriceCategory category = db.priceCategories.get(in.getLong());
+                if (category != null) {
+                    db.applyPut(Movie.of(title, releaseDate, rented, category).withId(id));
+                } else if (!snapshot) {
+                    log.warn("Skipped movie " + id + " of the journal, its price category is missing");
+                }
+                break;
+            }
+            case PUT_USER: {
+                User user = new User(readString(in), readString(in));
+                user.setEmail(readString(in));
+                user.setId(id);
+                db.applyPut(user);
+                break;
+            }
+            case PUT_RENTAL:
+            case PUT_CHARGED_RENTAL: {
+                User user = db.users.get(in.getLong());
+                Movie movie = db.movies.get(in.getLong());
+                LocalDate rentalDate = LocalDate.ofEpochDay(in.getLong());
+                int rentalDays = in.getInt();
+                Long chargedCents = kind == PUT_CHARGED_RENTAL ? in.getLong() : null;
+                if (user != null && movie != null) {
+                    Rental rental = Rental.of(id, user, movie, rentalDays, rentalDate);
+                    rental.setChargedCents(chargedCents);
+                    db.applyPut(rental);
+                } else if (!snapshot) {
+                    log.warn("Skipped rental " + id + " of the journal, its user or movie is missing");
+                }
+                break;
+            }
+            case PUT_BALANCE:
+                db.applyPut(new UserBalance(id, in.getLong(), in.getInt()));
+                break;
+            case DELETE_PRICE_CATEGORY: db.applyRemovePriceCategory(id); break;
+            case DELETE_MOVIE: db.applyRemoveMovie(id); break;
+            case DELETE_USER: db.applyRemoveUser(id); break;
+            case DELETE_RENTAL: db.applyRemoveRental(id); break;
+            default:
+                throw new IllegalStateException("Unknown journal record " + kind);
+        }
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(Writer writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,235 @@
+package ch.fhnw.edu.rental.persistence.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Concurrent hash map with primitive {@code long} keys and non-null values.
+ * <p>
+ * The map is split into segments selected by the high bits of the hashed key. Each
+ * segment is an open addressing table with linear probing, guarded by its own
+ * {@link StampedLock}: {@link #get} is an optimistic read without locking, writers lock
+ * only their segment. Removal shifts the following entries back, so no tombstones are
+ * left behind.
+ *
+ * @param <V> the value type
+ */
+final class LongMap<V> {
+
+    private static final int SEGMENT_BITS = 4;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    LongMap() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    private static long hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private Segment segment(long key) {
+        return segments[(int) (hash(key) >>> (64 - SEGMENT_BITS))];
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        return (V) segment(key).get(key);
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Associates the value with the key and returns the previous value or null.
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (value == null) throw new IllegalArgumentException();
+        return (V) segment(key).put(key, value);
+    }
+
+    /**
+     * Removes the key and returns its value or null.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        return (V) segment(key).remove(key);
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns a snapshot of all values in no particular order.
+     */
+    List<V> values() {
+        List<V> values = new ArrayList<>(size());
+        forEach(values::add);
+        return values;
+    }
+
+    /**
+     * Passes all values to the action. Each segment is copied under its read lock and the
+     * action is called outside of the lock, so it may modify the map.
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(Consumer<? super V> action) {
+        for (Segment segment : segments) {
+            for (Object value : segment.values()) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private int size;
+
+        Object get(long key) {
+            long stamp = lock.tryOptimisticRead();
+            long[] k = keys;
+            Object[] v = values;
+            Object value = k.length == v.length ? find(k, v, key) : null;
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    value = find(keys, values, key);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return value;
+        }
+
+        private static Object find(long[] k, Object[] v, long key) {
+            int mask = k.length - 1;
+            int i = (int) hash(key) & mask;
+            for (int n = 0; n < k.length; n++) {
+                Object value = v[i];
+                if (value == null) {
+                    return null;
+                }
+                if (k[i] == key) {
+                    return value;
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        Object put(long key, Object value) {
+            long stamp = lock.writeLock();
+            try {
+                int mask = keys.length - 1;
+                int i = (int) hash(key) & mask;
+                while (values[i] != null) {
+                    if (keys[i] == key) {
+                        Object old = values[i];
+                        values[i] = value;
+                        return old;
+                    }
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = value;
+                if (++size * 4 > keys.length * 3) {
+                    resize();
+                }
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            long[] newKeys = new long[oldKeys.length * 2];
+            Object[] newValues = new Object[oldKeys.length * 2];
+            int mask = newKeys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldValues[j] != null) {
+                    int i = (int) hash(oldKeys[j]) & mask;
+                    while (newValues[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    newKeys[i] = oldKeys[j];
+                    newValues[i] = oldValues[j];
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+
+        Object remove(long key) {
+            long stamp = lock.writeLock();
+            try {
+                int mask = keys.length - 1;
+                int i = (int) hash(key) & mask;
+                while (values[i] != null && keys[i] != key) {
+                    i = (i + 1) & mask;
+                }
+                Object old = values[i];
+                if (old == null) {
+                    return null;
+                }
+                values[i] = null;
+                size--;
+
+                // shift back the entries whose probe sequence passes the freed slot
+                for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+                    int home = (int) hash(keys[j]) & mask;
+                    boolean inPlace = i <= j ? i < home && home <= j : i < home || home <= j;
+                    if (!inPlace) {
+                        keys[i] = keys[j];
+                        values[i] = values[j];
+                        values[j] = null;
+                        i = j;
+                    }
+                }
+                return old;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        List<Object> values() {
+            long stamp = lock.readLock();
+            try {
+                List<Object> result = new ArrayList<>(size);
+                for (Object value : values) {
+                    if (value != null) {
+                        result.add(value);
+                    }
+                }
+                return result;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+}
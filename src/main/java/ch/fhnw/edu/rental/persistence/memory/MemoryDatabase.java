@@ -0,0 +1,306 @@
+package ch.fhnw.edu.rental.persistence.memory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import ch.fhnw.edu.rental.model.Movie;
+import ch.fhnw.edu.rental.model.PriceCategory;
+import ch.fhnw.edu.rental.model.PriceCategoryChildren;
+import ch.fhnw.edu.rental.model.PriceCategoryNewRelease;
+import ch.fhnw.edu.rental.model.PriceCategoryRegular;
+import ch.fhnw.edu.rental.model.Rental;
+import ch.fhnw.edu.rental.model.User;
+import ch.fhnw.edu.rental.model.UserBalance;
+
+/**
+ * Tables and secondary indexes shared by the in-memory repositories. The repositories
+ * store and return the entity instances themselves; every table and index is thread
+ * safe on its own, but there is no isolation across several operations and a rollback
+ * of the surrounding transaction does not undo any change.
+ * <p>
+ * All changes go through the {@code put}/{@code remove} methods, which maintain the
+ * indexes and append the change to the {@link Journal}. On startup the state is
+ * recovered from the journal; without journal data the price categories are created
+ * with the same ids as in data.sql.
+ * <p>
+ * The rental list of a stored user is shared by all threads, as rentals of different
+ * movies for the same user are not serialized. It is replaced by a copy-on-write list
+ * when the user is stored, so that it is changed atomically and read from a snapshot.
+ */
+@Component
+@Profile("memory")
+class MemoryDatabase {
+
+    final Table<PriceCategory> priceCategories = new Table<>(PriceCategory::getId);
+    final Table<Movie> movies = new Table<>(Movie::getId);
+    final Table<User> users = new Table<>(User::getId);
+    final Table<Rental> rentals = new Table<>(Rental::getId);
+    final Table<UserBalance> balances = new Table<>(UserBalance::getUserId);
+
+    final Index<String> moviesByTitle = new Index<>();
+    final Index<String> usersByLastName = new Index<>();
+    final Index<String> usersByFirstName = new Index<>();
+    final Index<String> usersByEmail = new Index<>();
+    final Index<Long> rentalsByUser = new Index<>();
+    final Index<Long> rentalsByMovie = new Index<>();
+
+    /**
+     * Ids of the rented movies. This set is the source of truth for {@link #claimMovie}
+     * and {@link #releaseMovie}, which change it atomically; the rented flag of the stored
+     * movie instances mirrors it and is set by them after the set changed.
+     */
+    private final Set<Long> rentedMovies = ConcurrentHashMap.newKeySet();
+
+    private final Journal journal;
+    private final int tariffDays;
+
+    MemoryDatabase(Journal journal, @Value("${rental.tariff.max-days:400}") int tariffDays) {
+        this.journal = journal;
+        this.tariffDays = tariffDays;
+        boolean recovered = journal.recover(this);
+        journal.start(this);
+        if (!recovered) {
+            seed(new PriceCategoryRegular(), 1);
+            seed(new PriceCategoryChildren(), 2);
+            seed(new PriceCategoryNewRelease(), 3);
+        }
+    }
+
+    private void seed(PriceCategory category, long id) {
+        category.setId(id);
+        put(category);
+    }
+
+    void put(PriceCategory category) {
+        applyPut(category);
+        journal.append(JournalCodec.put(category));
+    }
+
+    void put(Movie movie) {
+        applyPut(movie);
+        journal.append(JournalCodec.put(movie));
+    }
+
+    void put(User user) {
+        applyPut(user);
+        journal.append(JournalCodec.put(user));
+    }
+
+    void put(Rental rental) {
+        applyPut(rental);
+        journal.append(JournalCodec.put(rental));
+    }
+
+    /**
+     * Adds the given amounts to the balance of the user. Synchronized, as the new balance
+     * depends on the current one.
+     */
+    synchronized void addToBalance(long userId, long chargeCents, int points) {
+        UserBalance current = balances.get(userId);
+        UserBalance balance = (current == null ? UserBalance.empty(userId) : current).plus(chargeCents, points);
+        applyPut(balance);
+        journal.append(JournalCodec.put(balance));
+    }
+
+    /**
+     * Marks the movie as rented unless it is rented already.
+     */
+    boolean claimMovie(long id) {
+        Movie movie = movies.get(id);
+        if (movie == null || !rentedMovies.add(id)) {
+            return false;
+        }
+        movie.setRented(true);
+        movie.markClean();
+        journal.append(JournalCodec.put(movie));
+        return true;
+    }
+
+    /**
+     * Marks the movie as available unless it is available already.
+     */
+    boolean releaseMovie(long id) {
+        Movie movie = movies.get(id);
+        if (movie == null || !rentedMovies.remove(id)) {
+            return false;
+        }
+        movie.setRented(false);
+        movie.markClean();
+        journal.append(JournalCodec.put(movie));
+        return true;
+    }
+
+    PriceCategory removePriceCategory(long id) {
+        PriceCategory removed = applyRemovePriceCategory(id);
+        journal.append(JournalCodec.deletePriceCategory(id));
+        return removed;
+    }
+
+    Movie removeMovie(long id) {
+        Movie removed = applyRemoveMovie(id);
+        journal.append(JournalCodec.deleteMovie(id));
+        return removed;
+    }
+
+    /**
+     * Removes the user together with its rentals and balance, like ON DELETE CASCADE.
+     */
+    User removeUser(long id) {
+        User removed = applyRemoveUser(id);
+        journal.append(JournalCodec.deleteUser(id));
+        return removed;
+    }
+
+    Rental removeRental(long id) {
+        Rental removed = applyRemoveRental(id);
+        journal.append(JournalCodec.deleteRental(id));
+        return removed;
+    }
+
+    // changes without journaling, used by the methods above and for recovery
+
+    /**
+     * Stores the price category. If it replaces another instance, the movies of the
+     * category are moved to the new instance, so that they are charged by its tariff.
+     */
+    void applyPut(PriceCategory category) {
+        category.precompute(tariffDays);
+        PriceCategory previous = priceCategories.put(category);
+        if (previous != null && previous != category) {
+            movies.forEach(movie -> {
+                if (movie.getPriceCategory() == previous) {
+                    movie.setPriceCategory(category);
+                    movie.markClean();
+                }
+            });
+        }
+    }
+
+    /**
+     * Stores the movie. If it replaces another instance, e.g. when the log following a
+     * snapshot is replayed, the rentals of the movie are moved to the new instance.
+     */
+    void applyPut(Movie movie) {
+        movie.markClean();
+        Movie previous = movies.put(movie);
+        if (previous != null && previous != movie) {
+            for (Long rentalId : rentalsByMovie.get(movie.getId())) {
+                Rental rental = rentals.get(rentalId);
+                if (rental != null) {
+                    rental.setMovie(movie);
+                }
+            }
+        }
+        moviesByTitle.put(movie.getId(), movie.getTitle());
+        if (movie.isRented()) {
+            rentedMovies.add(movie.getId());
+        } else {
+            rentedMovies.remove(movie.getId());
+        }
+    }
+
+    /**
+     * Stores the user. If it replaces another instance, the rentals of the user are moved
+     * to the new instance, like the rentals of a replaced movie.
+     */
+    void applyPut(User user) {
+        user.markClean();
+        if (!(user.getRentals() instanceof CopyOnWriteArrayList)) {
+            user.setRentals(new CopyOnWriteArrayList<>(user.getRentals()));
+        }
+        User previous = users.put(user);
+        long id = user.getId();
+        if (previous != null && previous != user) {
+            for (Long rentalId : rentalsByUser.get(id)) {
+                Rental rental = rentals.get(rentalId);
+                if (rental != null) {
+                    rental.setUser(user);
+                    rentalsOf(user).addIfAbsent(rental);
+                }
+            }
+        }
+        usersByLastName.put(id, user.getLastName());
+        usersByFirstName.put(id, user.getFirstName());
+        usersByEmail.put(id, user.getEmail());
+    }
+
+    /**
+     * Stores the rental and adds it to the rental list of the stored owner.
+     */
+    void applyPut(Rental rental) {
+        rentals.put(rental);
+        rentalsByUser.put(rental.getId(), rental.getUser().getId());
+        rentalsByMovie.put(rental.getId(), rental.getMovie().getId());
+        User owner = users.get(rental.getUser().getId());
+        if (owner != null) {
+            rentalsOf(owner).addIfAbsent(rental);
+        }
+    }
+
+    /**
+     * Stores the balance unless its user was removed meanwhile.
+     */
+    void applyPut(UserBalance balance) {
+        if (users.contains(balance.getUserId())) {
+            balances.put(balance);
+        }
+    }
+
+    PriceCategory applyRemovePriceCategory(long id) {
+        return priceCategories.remove(id);
+    }
+
+    Movie applyRemoveMovie(long id) {
+        moviesByTitle.remove(id);
+        rentedMovies.remove(id);
+        return movies.remove(id);
+    }
+
+    User applyRemoveUser(long id) {
+        for (Long rentalId : rentalsByUser.get(id)) {
+            applyRemoveRental(rentalId);
+        }
+        usersByLastName.remove(id);
+        usersByFirstName.remove(id);
+        usersByEmail.remove(id);
+        balances.remove(id);
+        return users.remove(id);
+    }
+
+    /**
+     * Removes the rental and removes it from the rental list of the stored owner.
+     */
+    Rental applyRemoveRental(long id) {
+        Rental rental = rentals.remove(id);
+        rentalsByUser.remove(id);
+        rentalsByMovie.remove(id);
+        if (rental != null) {
+            User owner = users.get(rental.getUser().getId());
+            if (owner != null) {
+                rentalsOf(owner).remove(rental);
+            }
+        }
+        return rental;
+    }
+
+    /**
+     * Returns the rental list of a stored user. A list set on the user since it was
+     * stored is replaced again; this is not atomic, but only done by the thread which
+     * set it.
+     */
+    private static CopyOnWriteArrayList<Rental> rentalsOf(User user) {
+        List<Rental> rentals = user.getRentals();
+        if (rentals instanceof CopyOnWriteArrayList) {
+            return (CopyOnWriteArrayList<Rental>) rentals;
+        }
+        CopyOnWriteArrayList<Rental> shared = new CopyOnWriteArrayList<>(rentals);
+        user.setRentals(shared);
+        return shared;
+    }
+}
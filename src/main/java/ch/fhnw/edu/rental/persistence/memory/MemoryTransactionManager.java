@@ -0,0 +1,44 @@
+package ch.fhnw.edu.rental.persistence.memory;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+/**
+ * Transaction manager for the in-memory profile, in which no DataSource is configured.
+ * It demarcates the transactions of the {@code @Transactional} services and drives
+ * transaction synchronization. A commit waits until the {@link Journal} has made the
+ * changes durable; a rollback has nothing to undo.
+ */
+@Component
+@Profile("memory")
+class MemoryTransactionManager extends AbstractPlatformTransactionManager {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Journal journal;
+
+    MemoryTransactionManager(Journal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    protected Object doGetTransaction() {
+        return new Object();
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+        journal.sync();
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+    }
+}
@@ -0,0 +1,80 @@
+package ch.fhnw.edu.rental.persistence.memory;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Rows of one entity type keyed by id, together with the sequence generating new ids.
+ *
+ * @param <T> the entity type
+ */
+final class Table<T> {
+
+    private final LongMap<T> rows = new LongMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Function<? super T, Long> idOf;
+
+    Table(Function<? super T, Long> idOf) {
+        this.idOf = idOf;
+    }
+
+    Long idOf(T row) {
+        return idOf.apply(row);
+    }
+
+    T get(long id) {
+        return rows.get(id);
+    }
+
+    boolean contains(long id) {
+        return rows.containsKey(id);
+    }
+
+    /**
+     * Stores the row under its id and makes sure the sequence does not hand out this id.
+     */
+    T put(T row) {
+        long id = idOf(row);
+        advance(id);
+        return rows.put(id, row);
+    }
+
+    T remove(long id) {
+        return rows.remove(id);
+    }
+
+    long nextId() {
+        return sequence.incrementAndGet();
+    }
+
+    long sequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Makes sure the sequence does not hand out ids up to the given one.
+     */
+    void advance(long id) {
+        sequence.accumulateAndGet(id, Math::max);
+    }
+
+    int size() {
+        return rows.size();
+    }
+
+    /**
+     * Returns all rows ordered by id.
+     */
+    List<T> values() {
+        List<T> values = rows.values();
+        values.sort(Comparator.comparing(idOf));
+        return values;
+    }
+
+    void forEach(Consumer<? super T> action) {
+        rows.forEach(action);
+    }
+}
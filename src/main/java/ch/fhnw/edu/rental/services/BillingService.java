@@ -0,0 +1,18 @@
+package ch.fhnw.edu.rental.services;
+
+import java.time.LocalDate;
+
+public interface BillingService {
+
+	/**
+	 * Bills the rentals of all users which started between the given dates, both
+	 * inclusive. The charge of a rental is the one of the current price category of its
+	 * movie, like {@link ch.fhnw.edu.rental.model.Rental#getRentalFeeCents()}.
+	 *
+	 * @throws IllegalArgumentException if a date is null or {@code from} is after {@code until}.
+	 */
+	public Invoices bill(LocalDate from, LocalDate until);
+
+	/** Bills all rentals of all users. */
+	public Invoices billAll();
+}
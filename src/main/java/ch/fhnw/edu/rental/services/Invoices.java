@@ -0,0 +1,68 @@
+package ch.fhnw.edu.rental.services;
+
+import java.util.Arrays;
+
+import ch.fhnw.edu.rental.model.Money;
+
+/**
+ * The result of a {@linkplain BillingService billing run}: one entry per user with at
+ * least one billed rental, ordered by user id. Amounts are in {@linkplain Money cents}.
+ */
+public final class Invoices {
+
+	private final long[] userIds;
+	private final long[] chargeCents;
+	private final int[] frequentRenterPoints;
+	private final int[] rentalCounts;
+
+	/**
+	 * The arrays are taken over without copying; all must have the same length and the
+	 * user ids must be ascending.
+	 */
+	public Invoices(long[] userIds, long[] chargeCents, int[] frequentRenterPoints, int[] rentalCounts) {
+		if (chargeCents.length != userIds.length || frequentRenterPoints.length != userIds.length
+				|| rentalCounts.length != userIds.length) {
+			throw new IllegalArgumentException("columns differ in length");
+		}
+		this.userIds = userIds;
+		this.chargeCents = chargeCents;
+		this.frequentRenterPoints = frequentRenterPoints;
+		this.rentalCounts = rentalCounts;
+	}
+
+	public int size() {
+		return userIds.length;
+	}
+
+	public long getUserId(int index) {
+		return userIds[index];
+	}
+
+	public long getChargeCents(int index) {
+		return chargeCents[index];
+	}
+
+	public int getFrequentRenterPoints(int index) {
+		return frequentRenterPoints[index];
+	}
+
+	public int getRentalCount(int index) {
+		return rentalCounts[index];
+	}
+
+	/**
+	 * Returns the index of the given user, or a negative value if the user was not billed.
+	 */
+	public int indexOf(long userId) {
+		return Arrays.binarySearch(userIds, userId);
+	}
+
+	/** Returns the sum of all charges in cents. */
+	public long getTotalCents() {
+		long total = 0;
+		for (long cents : chargeCents) {
+			total += cents;
+		}
+		return total;
+	}
+}
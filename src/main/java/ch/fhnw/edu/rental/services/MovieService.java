@@ -1,20 +1,36 @@
 package ch.fhnw.edu.rental.services;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import ch.fhnw.edu.rental.model.Movie;
 import ch.fhnw.edu.rental.model.PriceCategory;
+import ch.fhnw.edu.rental.persistence.MovieFilter;
+import ch.fhnw.edu.rental.persistence.MovieRepository.MovieRow;
+import ch.fhnw.edu.rental.persistence.Sort;
 
 public interface MovieService {
 	public Movie getMovieById(Long id);
 	
+	public List<Movie> getMoviesById(List<Long> ids);
+	
 	public List<Movie> getAllMovies();
 	
+	public void forEachMovie(Consumer<? super Movie> action);
+	
+	public List<Movie> getMoviePage(Movie after, int limit, Sort sort);
+	
+	public void forEachMovieRow(MovieFilter filter, Long afterId, int limit, MovieRow action);
+	
 	public List<Movie> getMoviesByTitle(String title);
 	
 	public Movie saveMovie(Movie movie);
 	
+	public List<Movie> saveMovies(List<Movie> movies);
+	
 	public void deleteMovie(Movie movie);
 	
 	public List<PriceCategory> getAllPriceCategories();
+	
+	public PriceCategory getPriceCategoryByName(String name);
 }
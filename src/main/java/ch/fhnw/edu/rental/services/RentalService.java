@@ -1,13 +1,24 @@
 package ch.fhnw.edu.rental.services;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import ch.fhnw.edu.rental.model.Rental;
+import ch.fhnw.edu.rental.persistence.RentalRepository.RentalRow;
+import ch.fhnw.edu.rental.persistence.Sort;
 
 public interface RentalService {
 	public Rental getRentalById(Long id);
 
 	public List<Rental> getAllRentals();
 	
+	public void forEachRental(Consumer<? super Rental> action);
+	
+	public List<Rental> getRentalPage(Rental after, int limit, Sort sort);
+	
+	public void forEachRentalRow(Long afterId, int limit, RentalRow action);
+	
+	public void forEachRentalRowOfUser(Long userId, RentalRow action);
+	
 	public void deleteRental(Rental rental);
 }
@@ -1,10 +1,15 @@
 package ch.fhnw.edu.rental.services;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import ch.fhnw.edu.rental.model.Movie;
 import ch.fhnw.edu.rental.model.Rental;
 import ch.fhnw.edu.rental.model.User;
+import ch.fhnw.edu.rental.model.UserBalance;
+import ch.fhnw.edu.rental.persistence.Sort;
+import ch.fhnw.edu.rental.persistence.UserRepository.UserRow;
 
 public interface UserService {
 	public User getUserById(Long id);
@@ -15,9 +20,32 @@ public interface UserService {
 	
 	public List<User> getAllUsers();
 	
+	public void forEachUser(Consumer<? super User> action);
+	
+	public List<User> getUserPage(User after, int limit, Sort sort);
+	
+	public void forEachUserRow(Long afterId, int limit, UserRow action);
+	
 	public List<User> getUsersByName(String name);
 	
+	public User getUserByEmail(String email);
+	
+	public int getNumberOfRentals(Long userId);
+
+	/**
+	 * Returns the outstanding charge and the frequent renter points of the user, kept up
+	 * to date by {@link #rentMovie} and {@link #returnMovie}, or null if the user does not
+	 * exist.
+	 */
+	public UserBalance getBalance(Long userId);
+	
 	public Rental rentMovie(User user, Movie movie, int days);
 	
+	public List<Rental> rentMovies(User user, Collection<Movie> movies, int days);
+	
 	public void returnMovie(User user, Movie movie);
+	
+	public boolean returnRental(Long rentalId);
+	
+	public boolean returnMovie(Long movieId);
 }
@@ -0,0 +1,207 @@
+package ch.fhnw.edu.rental.services.impl;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import ch.fhnw.edu.rental.model.PriceCategory;
+import ch.fhnw.edu.rental.persistence.PriceCategoryRepository;
+import ch.fhnw.edu.rental.persistence.RentalColumns;
+import ch.fhnw.edu.rental.persistence.RentalRepository;
+import ch.fhnw.edu.rental.services.BillingService;
+import ch.fhnw.edu.rental.services.Invoices;
+
+/**
+ * Bills the rentals from their {@linkplain RentalColumns columns} instead of walking
+ * the rental objects. The users are partitioned into ranges with about the same number
+ * of rentals which are billed in parallel on the common fork/join pool; as the columns
+ * are ordered by user, every user is billed by exactly one partition and no results
+ * have to be merged.
+ */
+@Service
+@Transactional
+public class BillingServiceImpl implements BillingService {
+	private Log log = LogFactory.getLog(this.getClass());
+
+	/** Partitions with at most this many rentals are billed without splitting them further. */
+	static final int PARTITION_ROWS = 8192;
+
+	@Autowired
+	private RentalRepository rentalRepo;
+
+	@Autowired
+	private PriceCategoryRepository priceCategoryRepo;
+
+	@Override
+	public Invoices bill(LocalDate from, LocalDate until) {
+		if(from == null || until == null) throw new IllegalArgumentException();
+		if(from.isAfter(until)) throw new IllegalArgumentException("from is after until");
+		return bill(from.toEpochDay(), until.toEpochDay());
+	}
+
+	@Override
+	public Invoices billAll() {
+		return bill(Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	private Invoices bill(long fromDay, long untilDay) {
+		RentalColumns columns = rentalRepo.loadColumns();
+		BillingRun run = new BillingRun(columns, priceCategoryRepo.findAll(), fromDay, untilDay);
+		ForkJoinPool.commonPool().invoke(run.new Partition(0, run.users));
+		Invoices invoices = run.invoices();
+		log.debug("bill() done: " + columns.size() + " rentals, " + invoices.size() + " users");
+		return invoices;
+	}
+
+	/**
+	 * The columns of one billing run and its results, one entry per user.
+	 */
+	private static final class BillingRun {
+		final long[] userIds;
+		final long[] priceCategoryIds;
+		final int[] rentalDays;
+		final long[] rentalEpochDays;
+		final long fromDay;
+		final long untilDay;
+
+		// the price categories ordered by id, for a binary search without boxing
+		final long[] categoryIds;
+		final PriceCategory[] categories;
+
+		// the rows of user u are starts[u] until starts[u + 1]
+		final int[] starts;
+		final int users;
+
+		final long[] chargeCents;
+		final int[] points;
+		final int[] counts;
+
+		BillingRun(RentalColumns columns, List<PriceCategory> priceCategories, long fromDay, long untilDay) {
+			this.userIds = columns.userIds();
+			this.priceCategoryIds = columns.priceCategoryIds();
+			this.rentalDays = columns.rentalDays();
+			this.rentalEpochDays = columns.rentalEpochDays();
+			this.fromDay = fromDay;
+			this.untilDay = untilDay;
+
+			PriceCategory[] sorted = priceCategories.toArray(new PriceCategory[0]);
+			Arrays.sort(sorted, (a, b) -> Long.compare(a.getId(), b.getId()));
+			this.categories = sorted;
+			this.categoryIds = new long[sorted.length];
+			for (int i = 0; i < sorted.length; i++) {
+				categoryIds[i] = sorted[i].getId();
+			}
+
+			int size = columns.size();
+			int[] userStarts = new int[size + 1];
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				if (i == 0 || userIds[i] != userIds[i - 1]) {
+					userStarts[count++] = i;
+				}
+			}
+			userStarts[count] = size;
+			this.starts = userStarts;
+			this.users = count;
+
+			this.chargeCents = new long[count];
+			this.points = new int[count];
+			this.counts = new int[count];
+		}
+
+		void bill(int fromUser, int toUser) {
+			for (int u = fromUser; u < toUser; u++) {
+				long cents = 0;
+				int userPoints = 0;
+				int rentals = 0;
+				for (int i = starts[u], end = starts[u + 1]; i < end; i++) {
+					long day = rentalEpochDays[i];
+					if (day < fromDay || day > untilDay) {
+						continue;
+					}
+					PriceCategory category = category(priceCategoryIds[i]);
+					int days = rentalDays[i];
+					cents += category.getChargeCents(days);
+					userPoints += category.getFrequentRenterPoints(days);
+					rentals++;
+				}
+				chargeCents[u] = cents;
+				points[u] = userPoints;
+				counts[u] = rentals;
+			}
+		}
+
+		private PriceCategory category(long id) {
+			int index = Arrays.binarySearch(categoryIds, id);
+			if (index < 0) {
+				throw new IllegalStateException("Price category " + id + " not found");
+			}
+			return categories[index];
+		}
+
+		/**
+		 * Returns the users with at least one billed rental.
+		 */
+		Invoices invoices() {
+			int billed = 0;
+			for (int u = 0; u < users; u++) {
+				if (counts[u] > 0) {
+					billed++;
+				}
+			}
+			long[] resultUserIds = new long[billed];
+			long[] resultCents = new long[billed];
+			int[] resultPoints = new int[billed];
+			int[] resultCounts = new int[billed];
+			for (int u = 0, j = 0; u < users; u++) {
+				if (counts[u] > 0) {
+					resultUserIds[j] = userIds[starts[u]];
+					resultCents[j] = chargeCents[u];
+					resultPoints[j] = points[u];
+					resultCounts[j] = counts[u];
+					j++;
+				}
+			}
+			return new Invoices(resultUserIds, resultCents, resultPoints, resultCounts);
+		}
+
+		/**
+		 * Bills a range of users, split in halves as long as it has too many rentals.
+		 */
+		final class Partition extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+
+			private final int fromUser;
+			private final int toUser;
+
+			Partition(int fromUser, int toUser) {
+				this.fromUser = fromUser;
+				this.toUser = toUser;
+			}
+
+			@Override
+			protected void compute() {
+				if (toUser - fromUser <= 1 || starts[toUser] - starts[fromUser] <= PARTITION_ROWS) {
+					bill(fromUser, toUser);
+					return;
+				}
+				// splits at the user with the middle row, so both halves have about as many rentals
+				int middleRow = (starts[fromUser] + starts[toUser]) >>> 1;
+				int middle = Arrays.binarySearch(starts, fromUser + 1, toUser, middleRow);
+				if (middle < 0) {
+					middle = -middle - 1;
+				}
+				middle = Math.min(Math.max(middle, fromUser + 1), toUser - 1);
+				invokeAll(new Partition(fromUser, middle), new Partition(middle, toUser));
+			}
+		}
+	}
+}
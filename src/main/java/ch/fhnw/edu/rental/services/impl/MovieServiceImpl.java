@@ -1,19 +1,25 @@
 package ch.fhnw.edu.rental.services.impl;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import ch.fhnw.edu.rental.model.Movie;
 import ch.fhnw.edu.rental.model.PriceCategory;
+import ch.fhnw.edu.rental.persistence.MovieFilter;
 import ch.fhnw.edu.rental.persistence.MovieRepository;
+import ch.fhnw.edu.rental.persistence.MovieRepository.MovieRow;
+import ch.fhnw.edu.rental.persistence.Sort;
 import ch.fhnw.edu.rental.persistence.PriceCategoryRepository;
 import ch.fhnw.edu.rental.services.MovieService;
 
 @Service
+@Transactional
 public class MovieServiceImpl implements MovieService {
 	private Log log = LogFactory.getLog(this.getClass());
 
@@ -27,12 +33,36 @@ public class MovieServiceImpl implements MovieService {
 		return movieRepo.findById(id).orElse(null);
 	}
 
+	@Override
+	public List<Movie> getMoviesById(List<Long> ids) {
+		return movieRepo.findAllById(ids);
+	}
+
 	public List<Movie> getAllMovies() {
 		List<Movie> movies = movieRepo.findAll();
 		log.debug("getAllMovies() done");
 		return movies;
 	}
 
+	@Override
+	public void forEachMovie(Consumer<? super Movie> action) {
+		movieRepo.forEach(action);
+		log.debug("forEachMovie() done");
+	}
+
+	@Override
+	public List<Movie> getMoviePage(Movie after, int limit, Sort sort) {
+		List<Movie> page = movieRepo.findPage(after, limit, sort);
+		log.debug("getMoviePage() done");
+		return page;
+	}
+
+	@Override
+	public void forEachMovieRow(MovieFilter filter, Long afterId, int limit, MovieRow action) {
+		movieRepo.forEachRow(filter, afterId, limit, action);
+		log.debug("forEachMovieRow() done");
+	}
+
 	public List<Movie> getMoviesByTitle(String title) {
 		return movieRepo.findByTitle(title);
 	}
@@ -46,6 +76,15 @@ public class MovieServiceImpl implements MovieService {
 		return movie;
 	}
 
+	public List<Movie> saveMovies(List<Movie> movies) {
+		if (movies == null) {
+			throw new RuntimeException("'movies' parameter is not set!");
+		}
+		movies = movieRepo.saveAll(movies);
+		log.debug("saved or updated " + movies.size() + " movies");
+		return movies;
+	}
+
 	public void deleteMovie(Movie movie) {
 		if (movie == null) {
 			throw new RuntimeException("'movie' parameter is not set!");
@@ -65,4 +104,12 @@ public class MovieServiceImpl implements MovieService {
 		return priceCategoryRepo.findAll();
 	}
 
+	public PriceCategory getPriceCategoryByName(String name) {
+		if (name == null) {
+			throw new RuntimeException("'name' parameter is not set!");
+		}
+		return priceCategoryRepo.findByName(name)
+			.orElseThrow(() -> new IllegalArgumentException("unknown price category: " + name));
+	}
+
 }
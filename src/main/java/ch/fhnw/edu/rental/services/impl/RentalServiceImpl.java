@@ -1,26 +1,36 @@
 package ch.fhnw.edu.rental.services.impl;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import ch.fhnw.edu.rental.model.Rental;
-import ch.fhnw.edu.rental.persistence.MovieRepository;
 import ch.fhnw.edu.rental.persistence.RentalRepository;
+import ch.fhnw.edu.rental.persistence.RentalRepository.RentalRow;
+import ch.fhnw.edu.rental.persistence.Sort;
 import ch.fhnw.edu.rental.services.RentalService;
 
 @Service
+@Transactional
 public class RentalServiceImpl implements RentalService {
 	private Log log = LogFactory.getLog(this.getClass());
 	
 	@Autowired
 	private RentalRepository rentalRepo;
-	
+
 	@Autowired
-	private MovieRepository movieRepo;
+	private StripedLock movieLocks;
+
+	/** Runs the deletes inside the movie stripes, like the returns of the user service. */
+	@Autowired
+	private TransactionTemplate transactions;
 	
 	@Override
 	public List<Rental> getAllRentals() {
@@ -29,23 +39,50 @@ public class RentalServiceImpl implements RentalService {
 		return rentals;
 	}
 
+	@Override
+	public void forEachRental(Consumer<? super Rental> action) {
+		rentalRepo.forEach(action);
+		log.debug("forEachRental() done");
+	}
+
+	@Override
+	public List<Rental> getRentalPage(Rental after, int limit, Sort sort) {
+		List<Rental> page = rentalRepo.findPage(after, limit, sort);
+		log.debug("getRentalPage() done");
+		return page;
+	}
+
+	@Override
+	public void forEachRentalRow(Long afterId, int limit, RentalRow action) {
+		rentalRepo.forEachRow(afterId, limit, action);
+		log.debug("forEachRentalRow() done");
+	}
+
+	@Override
+	public void forEachRentalRowOfUser(Long userId, RentalRow action) {
+		rentalRepo.forEachRowOfUser(userId, action);
+		log.debug("forEachRentalRowOfUser() done");
+	}
+
 	@Override
 	public Rental getRentalById(Long id) {
 		return rentalRepo.findById(id).orElse(null);
 	}
 
 	@Override
+	@Transactional(propagation = Propagation.SUPPORTS)
 	public void deleteRental(Rental rental) {
 		if (rental == null) {
 			throw new RuntimeException("'rental' parameter is not set!");
 		}
 
-		rental.getUser().getRentals().remove(rental);
-		rental.getMovie().setRented(false);
+		movieLocks.withLock(rental.getMovie().getId(), () -> transactions.execute(status -> {
+			rental.getUser().getRentals().remove(rental);
+			rental.getMovie().setRented(false);
 
-		rentalRepo.delete(rental);
-		
-		rental.setMovie(movieRepo.save(rental.getMovie()));
+			rentalRepo.giveBack(rental);
+			return null;
+		}));
 		
 		if (log.isDebugEnabled()) {
 			log.debug("rental[" + rental.getId() + "] deleted");
@@ -0,0 +1,128 @@
+package ch.fhnw.edu.rental.services.impl;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Serializes the service operations on the same movie. A movie id is mapped to one of a
+ * fixed number of lock stripes, so operations on different movies mostly run in parallel
+ * while two operations on the same movie never overlap. The services start their
+ * transaction inside the stripe, so that it is held until the changes are committed;
+ * this keeps the rented flag of shared movie instances consistent. If the caller already
+ * runs a transaction, the operation joins it and the stripe is released before that
+ * transaction commits; the store itself then decides which of two conflicting rentals
+ * succeeds.
+ * <p>
+ * Every acquisition is counted; one which found its stripe locked by another thread is
+ * counted as contended as well.
+ */
+@Component
+public class StripedLock {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contentions = new LongAdder();
+
+    /**
+     * @param stripes the number of stripes, rounded up to a power of two
+     */
+    public StripedLock(@Value("${rental.locks.stripes:64}") int stripes) {
+        if (stripes <= 0) throw new IllegalArgumentException("stripes must be > 0");
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Runs the action while holding the stripe of the given movie id.
+     */
+    public <T> T withLock(long movieId, Supplier<T> action) {
+        ReentrantLock lock = acquire(stripe(movieId));
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the action while holding the stripes of all given movie ids. The stripes are
+     * acquired in ascending order, so two callers cannot deadlock.
+     */
+    public <T> T withLocks(Collection<Long> movieIds, Supplier<T> action) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (Long movieId : movieIds) {
+            indexes.add(stripe(movieId));
+        }
+        int locked = 0;
+        try {
+            for (int index : indexes) {
+                acquire(index);
+                locked++;
+            }
+            return action.get();
+        } finally {
+            for (int index : indexes) {
+                if (locked-- == 0) {
+                    break;
+                }
+                stripes[index].unlock();
+            }
+        }
+    }
+
+    public void withLock(long movieId, Runnable action) {
+        withLock(movieId, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private ReentrantLock acquire(int index) {
+        ReentrantLock lock = stripes[index];
+        acquisitions.increment();
+        if (!lock.tryLock()) {
+            contentions.increment();
+            lock.lock();
+        }
+        return lock;
+    }
+
+    private int stripe(long id) {
+        // spreads consecutive ids over all stripes
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    public int getStripes() {
+        return stripes.length;
+    }
+
+    /**
+     * Returns the number of lock acquisitions so far.
+     */
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * Returns the number of acquisitions which had to wait for another thread.
+     */
+    public long getContentions() {
+        return contentions.sum();
+    }
+}
@@ -1,21 +1,34 @@
 package ch.fhnw.edu.rental.services.impl;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import ch.fhnw.edu.rental.model.Movie;
 import ch.fhnw.edu.rental.model.Rental;
 import ch.fhnw.edu.rental.model.User;
-import ch.fhnw.edu.rental.persistence.MovieRepository;
+import ch.fhnw.edu.rental.model.UserBalance;
 import ch.fhnw.edu.rental.persistence.RentalRepository;
 import ch.fhnw.edu.rental.persistence.UserRepository;
+import ch.fhnw.edu.rental.persistence.UserRepository.UserRow;
+import ch.fhnw.edu.rental.persistence.Sort;
 import ch.fhnw.edu.rental.services.UserService;
 
 @Service
+@Transactional
 public class UserServiceImpl implements UserService {
 	private Log log = LogFactory.getLog(this.getClass());
 	
@@ -24,9 +37,16 @@ public class UserServiceImpl implements UserService {
 
 	@Autowired
 	private RentalRepository rentalRepo;
-	
+
+	@Autowired
+	private StripedLock movieLocks;
+
+	/**
+	 * Runs the rents and returns inside the movie stripes, so that a stripe is released
+	 * only after the transaction committed.
+	 */
 	@Autowired
-	private MovieRepository movieRepo;
+	private TransactionTemplate transactions;
 
 	@Override
 	public User getUserById(Long id) {
@@ -40,6 +60,25 @@ public class UserServiceImpl implements UserService {
 		return users;
 	}
 
+	@Override
+	public void forEachUser(Consumer<? super User> action) {
+		userRepo.forEach(action);
+		log.debug("forEachUser() done");
+	}
+
+	@Override
+	public List<User> getUserPage(User after, int limit, Sort sort) {
+		List<User> page = userRepo.findPage(after, limit, sort);
+		log.debug("getUserPage() done");
+		return page;
+	}
+
+	@Override
+	public void forEachUserRow(Long afterId, int limit, UserRow action) {
+		userRepo.forEachRow(afterId, limit, action);
+		log.debug("forEachUserRow() done");
+	}
+
 	@Override
 	public User save(User user) {
 		user = userRepo.save(user);
@@ -67,6 +106,25 @@ public class UserServiceImpl implements UserService {
 	}
 
 	@Override
+	public User getUserByEmail(String email) {
+		return userRepo.findOneByEmail(email).orElse(null);
+	}
+
+	@Override
+	public int getNumberOfRentals(Long userId) {
+		return (int) rentalRepo.countByUserId(userId);
+	}
+
+	@Override
+	public UserBalance getBalance(Long userId) {
+		if (userId == null) 
+			throw new IllegalArgumentException("parameter 'userId' is null!");
+
+		return userRepo.findBalance(userId).orElse(null);
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.SUPPORTS)
 	public Rental rentMovie(User user, Movie movie, int days) {
 		if (user == null) 
 			throw new IllegalArgumentException("parameter 'user' is null!");
@@ -74,34 +132,114 @@ public class UserServiceImpl implements UserService {
 			throw new IllegalArgumentException("parameter 'movie' is null!");
 		if (days < 1)
 			throw new IllegalArgumentException("parameter 'days' must be > 0");
+		if (movie.getId() == null)
+			throw new IllegalArgumentException("parameter 'movie' is not saved!");
 
-		Rental rental = new Rental(user, movie, days);
-		rental = rentalRepo.save(rental);
+		return movieLocks.withLock(movie.getId(), () -> transactions.execute(status -> {
+			if (movie.isRented())
+				throw new IllegalStateException("movie is already rented!");
 
-		// the constructor of rental changed the movie to rented, this change must
-		// be persisted.
-		rental.setMovie(movieRepo.save(movie));
+			// not added to the rentals of the user here, which would load them; the
+			// repository adds the saved rental if they are loaded already
+			Rental rental = Rental.of(null, user, movie, days, LocalDate.now());
 
-		return rental;
+			// the flag of the given instance was only checked; the movie is claimed in the
+			// store itself, which fails if someone else rented it meanwhile.
+			Optional<Rental> saved = rentalRepo.rent(rental);
+			if (!saved.isPresent()) {
+				throw new IllegalStateException("movie is already rented!");
+			}
+			movie.setRented(true);
+			return saved.get();
+		}));
 	}
 	
 	@Override
+	@Transactional(propagation = Propagation.SUPPORTS)
+	public List<Rental> rentMovies(User user, Collection<Movie> movies, int days) {
+		if (user == null) 
+			throw new IllegalArgumentException("parameter 'user' is null!");
+		if (movies == null) 
+			throw new IllegalArgumentException("parameter 'movies' is null!");
+		if (days < 1)
+			throw new IllegalArgumentException("parameter 'days' must be > 0");
+		Set<Long> movieIds = new HashSet<>();
+		for (Movie movie : movies) {
+			if (movie == null || movie.getId() == null)
+				throw new IllegalArgumentException("parameter 'movies' contains a movie which is not saved!");
+			if (!movieIds.add(movie.getId()))
+				throw new IllegalArgumentException("parameter 'movies' contains movie " + movie.getId() + " twice!");
+		}
+
+		return movieLocks.withLocks(movieIds, () -> transactions.execute(status -> {
+			List<Rental> rentals = new ArrayList<>(movies.size());
+			LocalDate today = LocalDate.now();
+			for (Movie movie : movies) {
+				if (movie.isRented())
+					throw new IllegalStateException("movie is already rented!");
+				rentals.add(Rental.of(null, user, movie, days, today));
+			}
+			if (!rentalRepo.rentAll(rentals)) {
+				throw new IllegalStateException("movie is already rented!");
+			}
+			for (Movie movie : movies) {
+				movie.setRented(true);
+			}
+			log.debug("user[" + user.getId() + "] rented " + rentals.size() + " movies");
+			return rentals;
+		}));
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.SUPPORTS)
 	public void returnMovie(User user, Movie movie) {
 		if (user == null) 
 			throw new IllegalArgumentException("parameter 'user' is null!");
 		if (movie == null) 
 			throw new IllegalArgumentException("parameter 'movie' is null!");
 
-		Rental rentalToRemove = null;
-		for (Rental rental : user.getRentals()) {
-			if (rental.getMovie().equals(movie)) {
-				rentalToRemove = rental;
-				break;
+		if (movie.getId() == null)
+			throw new IllegalArgumentException("parameter 'movie' is not saved!");
+
+		movieLocks.withLock(movie.getId(), () -> transactions.execute(status -> {
+			Rental rentalToRemove = null;
+			for (Rental rental : user.getRentals()) {
+				// compared by id, the rented flag of the given movie may differ
+				if (rental.getMovie().getId().equals(movie.getId())) {
+					rentalToRemove = rental;
+					break;
+				}
 			}
+			if (rentalToRemove == null)
+				throw new IllegalArgumentException("movie is not rented by user!");
+			
+			user.getRentals().remove(rentalToRemove);
+			rentalToRemove.getMovie().setRented(false);
+			rentalRepo.giveBack(rentalToRemove);
+			return null;
+		}));
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.SUPPORTS)
+	public boolean returnRental(Long rentalId) {
+		if (rentalId == null) 
+			throw new IllegalArgumentException("parameter 'rentalId' is null!");
+
+		// serialized with rents and returns of the same movie like the other returns
+		Optional<Long> movieId = rentalRepo.findMovieIdByRentalId(rentalId);
+		if (!movieId.isPresent()) {
+			return false;
 		}
-		
-		user.getRentals().remove(rentalToRemove);
-		rentalToRemove.getMovie().setRented(false);
-		rentalRepo.delete(rentalToRemove);
+		return movieLocks.withLock(movieId.get(), () -> transactions.execute(status -> rentalRepo.giveBackById(rentalId)));
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.SUPPORTS)
+	public boolean returnMovie(Long movieId) {
+		if (movieId == null) 
+			throw new IllegalArgumentException("parameter 'movieId' is null!");
+
+		return movieLocks.withLock(movieId, () -> transactions.execute(status -> rentalRepo.giveBackByMovieId(movieId)));
 	}
 }
@@ -1,6 +1,6 @@
-insert into pricecategories (pricecategory_id, pricecategory_type) values (1, 'Regular');
-insert into pricecategories (pricecategory_id, pricecategory_type) values (2, 'Children');
-insert into pricecategories (pricecategory_id, pricecategory_type) values (3, 'NewRelease');
+insert into pricecategories (pricecategory_id, pricecategory_type, pricecategory_base_cents, pricecategory_included_days, pricecategory_day_cents, pricecategory_points, pricecategory_bonus_days, pricecategory_bonus_points) values (1, 'Regular', 200, 2, 150, 1, 0, 0);
+insert into pricecategories (pricecategory_id, pricecategory_type, pricecategory_base_cents, pricecategory_included_days, pricecategory_day_cents, pricecategory_points, pricecategory_bonus_days, pricecategory_bonus_points) values (2, 'Children', 150, 3, 150, 1, 0, 0);
+insert into pricecategories (pricecategory_id, pricecategory_type, pricecategory_base_cents, pricecategory_included_days, pricecategory_day_cents, pricecategory_points, pricecategory_bonus_days, pricecategory_bonus_points) values (3, 'NewRelease', 0, 0, 300, 1, 2, 1);
 
 insert into movies (movie_id, movie_releasedate, movie_title, movie_rented, pricecategory_fk) values (1, '2017-05-11', 'Marie Curie', true, 1);
 insert into movies (movie_id, movie_releasedate, movie_title, movie_rented, pricecategory_fk) values (2, '2017-07-20', 'Curchill', true, 1);
@@ -22,3 +22,17 @@ insert into rentals (rental_id, movie_id, user_id, rental_rentaldate, rental_ren
 insert into rentals (rental_id, movie_id, user_id, rental_rentaldate, rental_rentaldays) values (2, 2, 1, '2017-10-01', 365);
 insert into rentals (rental_id, movie_id, user_id, rental_rentaldate, rental_rentaldays) values (3, 3, 3, '2017-10-01', 365);
 
+-- the fees and balances of the rentals above, by the tariff rules of their price categories
+update rentals r set rental_fee_cents = (
+	select c.pricecategory_base_cents + greatest(0, r.rental_rentaldays - c.pricecategory_included_days) * c.pricecategory_day_cents
+	from movies m join pricecategories c on m.pricecategory_fk = c.pricecategory_id
+	where m.movie_id = r.movie_id);
+
+insert into user_balances (user_id, balance_charge_cents, balance_points)
+	select r.user_id,
+		sum(r.rental_fee_cents),
+		sum(c.pricecategory_points + case when c.pricecategory_bonus_days > 0 and r.rental_rentaldays >= c.pricecategory_bonus_days then c.pricecategory_bonus_points else 0 end)
+	from rentals r
+	join movies m on r.movie_id = m.movie_id
+	join pricecategories c on m.pricecategory_fk = c.pricecategory_id
+	group by r.user_id;
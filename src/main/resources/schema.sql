@@ -1,3 +1,4 @@
+DROP TABLE USER_BALANCES IF EXISTS;
 DROP TABLE RENTALS IF EXISTS;
 DROP TABLE MOVIES IF EXISTS;
 DROP TABLE USERS IF EXISTS;
@@ -9,10 +10,21 @@ CREATE TABLE USERS(
 	USER_FIRSTNAME VARCHAR(255),
 	USER_NAME VARCHAR(255)
 );
+
+CREATE INDEX IDX_USERS_NAME ON USERS(USER_NAME);
+CREATE INDEX IDX_USERS_FIRSTNAME ON USERS(USER_FIRSTNAME);
+CREATE UNIQUE INDEX IDX_USERS_EMAIL ON USERS(USER_EMAIL);
 	
 CREATE TABLE PRICECATEGORIES(
 	PRICECATEGORY_ID IDENTITY PRIMARY KEY,
-	PRICECATEGORY_TYPE VARCHAR(255)
+	PRICECATEGORY_TYPE VARCHAR(255),
+	-- the tariff rules; null for the built-in types means their default rules
+	PRICECATEGORY_BASE_CENTS BIGINT,
+	PRICECATEGORY_INCLUDED_DAYS INT,
+	PRICECATEGORY_DAY_CENTS BIGINT,
+	PRICECATEGORY_POINTS INT,
+	PRICECATEGORY_BONUS_DAYS INT,
+	PRICECATEGORY_BONUS_POINTS INT
 );
 	
 CREATE TABLE MOVIES(
@@ -22,14 +34,34 @@ CREATE TABLE MOVIES(
 	MOVIE_RENTED BOOLEAN,
 	PRICECATEGORY_FK BIGINT,
 	CONSTRAINT FK_CATEGORY FOREIGN KEY(PRICECATEGORY_FK) REFERENCES PRICECATEGORIES(PRICECATEGORY_ID));
+
+-- used by the movie filters; FK_CATEGORY creates the index of PRICECATEGORY_FK
+CREATE INDEX IDX_MOVIES_RENTED ON MOVIES(MOVIE_RENTED);
+CREATE INDEX IDX_MOVIES_TITLE ON MOVIES(MOVIE_TITLE);
+CREATE INDEX IDX_MOVIES_RELEASEDATE ON MOVIES(MOVIE_RELEASEDATE);
 	
 CREATE TABLE RENTALS(
 	RENTAL_ID IDENTITY PRIMARY KEY auto_increment,
 	RENTAL_RENTALDATE TIMESTAMP,
 	RENTAL_RENTALDAYS INTEGER,
+	-- the fee charged when the movie was rented, subtracted from the balance on its return
+	RENTAL_FEE_CENTS BIGINT,
 	USER_ID BIGINT,
-	MOVIE_ID BIGINT,
-	CONSTRAINT FK_USER FOREIGN KEY(USER_ID) REFERENCES USERS(USER_ID),
-	CONSTRAINT FK_MOVIE FOREIGN KEY(MOVIE_ID) REFERENCES MOVIES(MOVIE_ID)
+	MOVIE_ID BIGINT
+);
+
+-- created before the foreign keys, which use them instead of creating their own
+CREATE INDEX IDX_RENTALS_USER ON RENTALS(USER_ID);
+CREATE INDEX IDX_RENTALS_MOVIE ON RENTALS(MOVIE_ID);
+
+ALTER TABLE RENTALS ADD CONSTRAINT FK_USER FOREIGN KEY(USER_ID) REFERENCES USERS(USER_ID) ON DELETE CASCADE;
+ALTER TABLE RENTALS ADD CONSTRAINT FK_MOVIE FOREIGN KEY(MOVIE_ID) REFERENCES MOVIES(MOVIE_ID);
+
+-- running totals, maintained when a movie is rented or given back
+CREATE TABLE USER_BALANCES(
+	USER_ID BIGINT PRIMARY KEY,
+	BALANCE_CHARGE_CENTS BIGINT NOT NULL,
+	BALANCE_POINTS INTEGER NOT NULL,
+	CONSTRAINT FK_BALANCE_USER FOREIGN KEY(USER_ID) REFERENCES USERS(USER_ID) ON DELETE CASCADE
 );
 
@@ -0,0 +1,112 @@
+package ch.fhnw.edu.rental.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import ch.fhnw.edu.rental.model.ConfiguredPriceCategory;
+import ch.fhnw.edu.rental.model.PriceCategory;
+import ch.fhnw.edu.rental.model.Rental;
+import ch.fhnw.edu.rental.model.TariffRules;
+import ch.fhnw.edu.rental.model.User;
+import ch.fhnw.edu.rental.persistence.PriceCategoryRepository;
+import ch.fhnw.edu.rental.services.BillingService;
+import ch.fhnw.edu.rental.services.Invoices;
+import ch.fhnw.edu.rental.services.MovieService;
+import ch.fhnw.edu.rental.services.UserService;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties={"gui=false"})
+@Transactional
+public class BillingServiceTest {
+
+	@Autowired
+	private BillingService billingService;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private MovieService movieService;
+
+	@Autowired
+	private PriceCategoryRepository priceCategoryRepo;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	public void testBillAllMatchesUsers() {
+		Invoices invoices = billingService.billAll();
+		assertEquals(2, invoices.size());
+		long total = 0;
+		for (User user : userService.getAllUsers()) {
+			int index = invoices.indexOf(user.getId());
+			if (user.getRentals().isEmpty()) {
+				assertTrue(index < 0);
+				continue;
+			}
+			assertEquals(user.getChargeCents(), invoices.getChargeCents(index));
+			assertEquals(user.getRentals().size(), invoices.getRentalCount(index));
+			int points = 0;
+			for (Rental rental : user.getRentals()) {
+				points += rental.getMovie().getPriceCategory().getFrequentRenterPoints(rental.getRentalDays());
+			}
+			assertEquals(points, invoices.getFrequentRenterPoints(index));
+			total += user.getChargeCents();
+		}
+		assertEquals(total, invoices.getTotalCents());
+		// Keller: 7 and 365 days Regular
+		assertEquals(950 + 54650, invoices.getChargeCents(invoices.indexOf(1L)));
+	}
+
+	@Test
+	public void testBillPeriod() {
+		userService.rentMovie(userService.getUserById(4L), movieService.getMovieById(8L), 2);
+		jdbcTemplate.update("insert into RENTALS (RENTAL_RENTALDATE, RENTAL_RENTALDAYS, USER_ID, MOVIE_ID) values ('2018-01-31', 1, 4, 9)");
+
+		Invoices january = billingService.bill(LocalDate.of(2018, 1, 1), LocalDate.of(2018, 1, 31));
+		assertEquals(1, january.size());
+		assertEquals(4L, january.getUserId(0));
+		assertEquals(300, january.getChargeCents(0));
+		assertEquals(1, january.getRentalCount(0));
+
+		assertEquals(2, billingService.bill(LocalDate.of(2017, 10, 1), LocalDate.of(2017, 10, 1)).size());
+		Invoices all = billingService.billAll();
+		assertEquals(3, all.size());
+		assertEquals(2, all.getRentalCount(all.indexOf(4L)));
+		assertEquals(900, all.getChargeCents(all.indexOf(4L)));
+		assertEquals(0, billingService.bill(LocalDate.of(2000, 1, 1), LocalDate.of(2000, 12, 31)).size());
+	}
+
+	@Test
+	public void testConfiguredPriceCategory() {
+		priceCategoryRepo.save(new ConfiguredPriceCategory("Promotion", TariffRules.of(100, 3, 50, 2, 0, 0)));
+		// read back from the table, not the saved instance
+		PriceCategory promotion = priceCategoryRepo.findByName("Promotion").get();
+		assertTrue(promotion instanceof ConfiguredPriceCategory);
+		assertEquals(TariffRules.of(100, 3, 50, 2, 0, 0), promotion.getRules());
+
+		jdbcTemplate.update("update MOVIES set PRICECATEGORY_FK = ? where MOVIE_ID = 9", promotion.getId());
+		jdbcTemplate.update("insert into RENTALS (RENTAL_RENTALDATE, RENTAL_RENTALDAYS, USER_ID, MOVIE_ID) values ('2018-01-31', 5, 4, 9)");
+
+		Invoices january = billingService.bill(LocalDate.of(2018, 1, 1), LocalDate.of(2018, 1, 31));
+		assertEquals(1, january.size());
+		assertEquals(100 + 2 * 50, january.getChargeCents(0));
+		assertEquals(2, january.getFrequentRenterPoints(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBillInvalidPeriod() {
+		billingService.bill(LocalDate.of(2018, 2, 1), LocalDate.of(2018, 1, 1));
+	}
+}
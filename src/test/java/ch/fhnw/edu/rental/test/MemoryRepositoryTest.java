@@ -0,0 +1,321 @@
+package ch.fhnw.edu.rental.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import ch.fhnw.edu.rental.MovieRentalApplication;
+import ch.fhnw.edu.rental.model.Movie;
+import ch.fhnw.edu.rental.model.Rental;
+import ch.fhnw.edu.rental.model.User;
+import ch.fhnw.edu.rental.persistence.MovieFilter;
+import ch.fhnw.edu.rental.persistence.MovieRepository;
+import ch.fhnw.edu.rental.persistence.Sort;
+import ch.fhnw.edu.rental.persistence.memory.InMemoryMovieRepository;
+import ch.fhnw.edu.rental.services.BillingService;
+import ch.fhnw.edu.rental.services.Invoices;
+import ch.fhnw.edu.rental.services.MovieService;
+import ch.fhnw.edu.rental.services.RentalService;
+import ch.fhnw.edu.rental.services.UserService;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties={"gui=false"})
+@ActiveProfiles("memory")
+public class MemoryRepositoryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Autowired
+	private MovieRepository movieRepo;
+
+	@Autowired
+	private MovieService movieService;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private RentalService rentalService;
+
+	@Autowired
+	private BillingService billingService;
+
+	@Test
+	public void testMemoryBackendIsActive() {
+		assertTrue(movieRepo instanceof InMemoryMovieRepository);
+		assertEquals(3, movieService.getAllPriceCategories().size());
+	}
+
+	@Test
+	public void testRentAndDeleteUser() {
+		User user = new User("Muster", "Hans");
+		user.setEmail("hans.muster@memory.ch");
+		user = userService.save(user);
+		Movie movie = movieService.saveMovie(Movie.of("Memory", LocalDate.now(), movieService.getPriceCategoryByName("Regular")));
+
+		assertSame(user, userService.getUserByEmail("hans.muster@memory.ch"));
+		assertTrue(movieService.getMoviesByTitle("Memory").contains(movie));
+
+		Rental rental = userService.rentMovie(user, movie, 3);
+		assertEquals(1, userService.getNumberOfRentals(user.getId()));
+		assertSame(rental, rentalService.getRentalById(rental.getId()));
+		assertTrue(userService.getUserById(user.getId()).getRentals().contains(rental));
+		try {
+			userService.rentMovie(user, Movie.of("Memory", movie.getReleaseDate(), false, movie.getPriceCategory()).withId(movie.getId()), 3);
+			fail("movie is rented already");
+		} catch (IllegalStateException e) {
+			assertEquals(1, user.getRentals().size());
+		}
+
+		assertTrue(userService.returnMovie(movie.getId()));
+		assertFalse(movie.isRented());
+		assertTrue(user.getRentals().isEmpty());
+		Movie other = movieService.saveMovie(Movie.of("Memory 2", LocalDate.now(), movieService.getPriceCategoryByName("Regular")));
+		assertEquals(2, userService.rentMovies(user, Arrays.asList(other, movie), 3).size());
+		userService.returnMovie(movie.getId());
+		try {
+			userService.rentMovies(user, Arrays.asList(movie, other), 3);
+			fail("movie is rented already");
+		} catch (IllegalStateException e) {
+			assertFalse(movie.isRented());
+			assertTrue(other.isRented());
+			assertEquals(1, user.getRentals().size());
+		}
+		rental = userService.rentMovie(user, movie, 3);
+		assertEquals(user.getChargeCents(), userService.getBalance(user.getId()).getChargeCents());
+
+		userService.deleteUser(user);
+		assertEquals(null, rentalService.getRentalById(rental.getId()));
+		assertEquals(null, userService.getBalance(user.getId()));
+		assertTrue(userService.getUsersByName("Muster").isEmpty());
+	}
+
+	@Test
+	public void testConcurrentRentalsOfSameUser() throws Exception {
+		User user = userService.save(new User("Parallel", "Paula"));
+		List<Movie> movies = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			movies.add(movieService.saveMovie(Movie.of("Parallel " + i, LocalDate.now(), movieService.getPriceCategoryByName("Regular"))));
+		}
+
+		// different movies for the same user, while another thread reads its rentals
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		AtomicBoolean done = new AtomicBoolean();
+		Future<?> reader = Executors.newSingleThreadExecutor().submit(() -> {
+			while (!done.get()) {
+				for (Rental rental : user.getRentals()) {
+					rental.getRentalFeeCents();
+				}
+			}
+		});
+		List<Future<?>> renters = new ArrayList<>();
+		for (Movie movie : movies) {
+			renters.add(executor.submit(() -> userService.rentMovie(user, movie, 1)));
+		}
+		for (Future<?> renter : renters) {
+			renter.get();
+		}
+		done.set(true);
+		reader.get();
+		executor.shutdown();
+
+		assertEquals(1000, user.getRentals().size());
+		assertEquals(1000 * 200, user.getChargeCents());
+		assertEquals(user.getChargeCents(), userService.getBalance(user.getId()).getChargeCents());
+		userService.deleteUser(user);
+	}
+
+	@Test
+	public void testBalanceAfterCategoryChange() {
+		User user = userService.save(new User("Balance", "Berta"));
+		Movie movie = movieService.saveMovie(Movie.of("Balance", LocalDate.now(), movieService.getPriceCategoryByName("New Release")));
+		userService.rentMovie(user, movie, 3);
+		assertEquals(900, userService.getBalance(user.getId()).getChargeCents());
+
+		movie.setPriceCategory(movieService.getPriceCategoryByName("Regular"));
+		movieService.saveMovie(movie);
+		userService.returnMovie(movie.getId());
+		assertEquals(0, userService.getBalance(user.getId()).getChargeCents());
+		assertEquals(2, userService.getBalance(user.getId()).getFrequentRenterPoints());
+		userService.deleteUser(user);
+	}
+
+	@Test
+	public void testRecoverFromJournal() throws Exception {
+		File dir = folder.newFolder();
+		File crashed = folder.newFolder();
+		Long userId;
+		try (ConfigurableApplicationContext context = startWithJournal(dir)) {
+			UserService users = context.getBean(UserService.class);
+			MovieService movies = context.getBean(MovieService.class);
+			User user = new User("Journal", "Jana");
+			user = users.save(user);
+			userId = user.getId();
+			Movie movie = movies.saveMovie(Movie.of("Journaled", LocalDate.of(2018, 1, 1), movies.getPriceCategoryByName("New Release")));
+			users.rentMovie(user, movie, 4);
+
+			// committed changes are in the log before the context is closed
+			for (File f : dir.listFiles()) {
+				Files.copy(f.toPath(), new File(crashed, f.getName()).toPath());
+			}
+		}
+
+		for (File d : new File[] { dir, crashed }) {
+			try (ConfigurableApplicationContext context = startWithJournal(d)) {
+				UserService users = context.getBean(UserService.class);
+				User user = users.getUserById(userId);
+				assertEquals("Jana", user.getFirstName());
+				assertEquals(1, user.getRentals().size());
+				assertEquals("Journaled", user.getRentals().get(0).getMovie().getTitle());
+				assertEquals(1200, users.getBalance(userId).getChargeCents());
+				assertEquals(2, users.getBalance(userId).getFrequentRenterPoints());
+				assertEquals(3, context.getBean(MovieService.class).getAllPriceCategories().size());
+			}
+		}
+	}
+
+	@Test
+	public void testRecoverChangesAfterSnapshot() throws Exception {
+		File dir = folder.newFolder();
+		File crashed = folder.newFolder();
+		Long userId;
+		Long movieId;
+		try (ConfigurableApplicationContext context = startWithJournal(dir)) {
+			UserService users = context.getBean(UserService.class);
+			MovieService movies = context.getBean(MovieService.class);
+			User user = users.save(new User("Snapshot", "Sina"));
+			userId = user.getId();
+			Movie movie = movies.saveMovie(Movie.of("Snapshotted", LocalDate.of(2018, 1, 1), movies.getPriceCategoryByName("Regular")));
+			movieId = movie.getId();
+			users.rentMovie(user, movie, 4);
+		}
+
+		// the restart loads the final snapshot, the changes below follow it in the log
+		try (ConfigurableApplicationContext context = startWithJournal(dir)) {
+			UserService users = context.getBean(UserService.class);
+			MovieService movies = context.getBean(MovieService.class);
+			User user = users.getUserById(userId);
+			user.setFirstName("Sabine");
+			users.save(user);
+			Movie movie = movies.getMovieById(movieId);
+			movie.setPriceCategory(movies.getPriceCategoryByName("Children"));
+			movies.saveMovie(movie);
+
+			for (File f : dir.listFiles()) {
+				Files.copy(f.toPath(), new File(crashed, f.getName()).toPath());
+			}
+		}
+
+		try (ConfigurableApplicationContext context = startWithJournal(crashed)) {
+			User user = context.getBean(UserService.class).getUserById(userId);
+			Movie movie = context.getBean(MovieService.class).getMovieById(movieId);
+			assertEquals("Sabine", user.getFirstName());
+			assertEquals(1, user.getRentals().size());
+			Rental rental = user.getRentals().get(0);
+			assertSame(user, rental.getUser());
+			assertSame(movie, rental.getMovie());
+			assertEquals("Children", movie.getPriceCategory().toString());
+			assertEquals(movie.getPriceCategory().getChargeCents(4), rental.getRentalFeeCents());
+		}
+	}
+
+	private static ConfigurableApplicationContext startWithJournal(File dir) {
+		return new SpringApplicationBuilder(MovieRentalApplication.class)
+			.web(WebApplicationType.NONE)
+			.profiles("memory")
+			.run("--gui=false", "--rental.memory.journal.directory=" + dir.getAbsolutePath());
+	}
+
+	@Test
+	public void testMoviePages() {
+		List<Movie> saved = new ArrayList<>();
+		for (int i = 0; i < 7; i++) {
+			saved.add(movieService.saveMovie(Movie.of("Page " + (7 - i), LocalDate.now(), movieService.getPriceCategoryByName("Children"))));
+		}
+
+		List<Movie> movies = new ArrayList<>();
+		List<Movie> page = movieService.getMoviePage(null, 3, Sort.by("title", Sort.Direction.DESC));
+		while (!page.isEmpty()) {
+			movies.addAll(page);
+			page = movieService.getMoviePage(page.get(page.size() - 1), 3, Sort.by("title", Sort.Direction.DESC));
+		}
+		movies.removeIf(m -> !m.getTitle().startsWith("Page "));
+		assertEquals(saved, movies);
+		assertFalse(movieService.getMoviePage(null, 1, Sort.BY_ID).isEmpty());
+	}
+
+	@Test
+	public void testUserPagesWithNullLastName() {
+		User nora = userService.save(new User(null, "Nora"));
+		User nina = userService.save(new User(null, "Nina"));
+		List<User> users = new ArrayList<>();
+		List<User> page = userService.getUserPage(null, 1, Sort.by("lastName", Sort.Direction.DESC));
+		while (!page.isEmpty()) {
+			users.addAll(page);
+			page = userService.getUserPage(page.get(page.size() - 1), 1, Sort.by("lastName", Sort.Direction.DESC));
+		}
+		// null sorts first, so it comes last in descending order, by descending id
+		assertEquals(Arrays.asList(nina, nora), users.subList(users.size() - 2, users.size()));
+		userService.deleteUser(nora);
+		userService.deleteUser(nina);
+	}
+
+	@Test
+	public void testRowProjections() {
+		List<Long> movieIds = new ArrayList<>();
+		movieService.forEachMovieRow(MovieFilter.ALL, null, Integer.MAX_VALUE, (id, title, releaseDate, rented, priceCategory) -> {
+			Movie movie = movieService.getMovieById(id);
+			assertEquals(movie.getTitle(), title);
+			assertEquals(movie.isRented(), rented);
+			assertEquals(movie.getPriceCategory(), priceCategory);
+			movieIds.add(id);
+		});
+		assertEquals(movieService.getAllMovies().size(), movieIds.size());
+
+		User user = userService.save(new User("Rows", "Anna"));
+		Movie movie = movieService.saveMovie(Movie.of("Rows", LocalDate.now(), movieService.getPriceCategoryByName("Regular")));
+		Rental rental = userService.rentMovie(user, movie, 4);
+		List<Long> rentalIds = new ArrayList<>();
+		rentalService.forEachRentalRowOfUser(user.getId(), (id, rentalDays, rentalDate, lastName, firstName, movieTitle, priceCategory) -> {
+			assertEquals("Rows", lastName);
+			assertEquals("Rows", movieTitle);
+			assertEquals(rental.getRentalFeeCents(), priceCategory.getChargeCents(rentalDays));
+			rentalIds.add(id);
+		});
+		assertEquals(Arrays.asList(rental.getId()), rentalIds);
+		Invoices invoices = billingService.billAll();
+		assertEquals(rental.getRentalFeeCents(), invoices.getChargeCents(invoices.indexOf(user.getId())));
+		rentalService.forEachRentalRow(rental.getId() - 1, 1, (id, rentalDays, rentalDate, lastName, firstName, movieTitle, priceCategory) -> assertEquals(rental.getId().longValue(), id));
+
+		List<Long> userIds = new ArrayList<>();
+		userService.forEachUserRow(null, Integer.MAX_VALUE, (id, lastName, firstName) -> userIds.add(id));
+		assertEquals(userService.getAllUsers().size(), userIds.size());
+		userService.deleteUser(user);
+	}
+}
@@ -4,6 +4,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
 
 import org.junit.Before;
@@ -11,6 +15,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -18,6 +23,8 @@ import ch.fhnw.edu.rental.model.Movie;
 import ch.fhnw.edu.rental.model.PriceCategory;
 import ch.fhnw.edu.rental.model.PriceCategoryNewRelease;
 import ch.fhnw.edu.rental.model.PriceCategoryRegular;
+import ch.fhnw.edu.rental.persistence.MovieFilter;
+import ch.fhnw.edu.rental.persistence.Sort;
 import ch.fhnw.edu.rental.services.MovieService;
 
 @RunWith(SpringRunner.class)
@@ -27,6 +34,9 @@ public class MovieServiceTest {
 	
 	@Autowired
 	private MovieService movieService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
 	
 	private int totalNumberOfMovies;
 	
@@ -95,6 +105,23 @@ public class MovieServiceTest {
 	}
 
 
+	@Test
+	public void testSaveAllMovies() {
+		PriceCategory category = movieService.getPriceCategoryByName("Regular");
+		List<Movie> movies = movieService.saveMovies(Arrays.asList(
+			Movie.of("first", LocalDate.now(), category),
+			Movie.of("second", LocalDate.now(), category),
+			movieService.getMovieById(6L)));
+
+		assertEquals(3, movies.size());
+		assertEquals("first", movies.get(0).getTitle());
+		assertTrue(movies.get(0).getId() != null);
+		assertTrue(movies.get(1).getId() != null);
+		assertEquals(Long.valueOf(6L), movies.get(2).getId());
+		assertEquals(totalNumberOfMovies + 2, movieService.getAllMovies().size());
+		assertEquals("second", movieService.getMovieById(movies.get(1).getId()).getTitle());
+	}
+
 	@Test
 	public void testDeleteMovie() {
 		List<Movie> movies = movieService.getAllMovies();
@@ -131,6 +158,14 @@ public class MovieServiceTest {
 		movieService.deleteMovie(movie);
 	}
 	
+	@Test
+	public void testPriceCategoriesAreShared() {
+		PriceCategory category = movieService.getPriceCategoryByName("New Release");
+		assertTrue(category instanceof PriceCategoryNewRelease);
+		assertTrue(category == movieService.getPriceCategoryByName("NewRelease"));
+		assertTrue(category == movieService.getMovieById(4L).getPriceCategory());
+	}
+
 	@Test
 	public void testGetByTitle() {
 		List<Movie> movies = movieService.getAllMovies();
@@ -158,6 +193,44 @@ public class MovieServiceTest {
 		assertEquals(totalNumberOfMovies, movies.size());
 	}
 
+	@Test
+	public void testMoviePagesByTitle() {
+		List<Movie> expected = new ArrayList<>(movieService.getAllMovies());
+		expected.sort(Comparator.comparing(Movie::getTitle).thenComparing(Movie::getId));
+
+		List<Movie> movies = new ArrayList<>();
+		List<Movie> page = movieService.getMoviePage(null, 3, Sort.by("title"));
+		while (!page.isEmpty()) {
+			assertTrue(page.size() <= 3);
+			movies.addAll(page);
+			page = movieService.getMoviePage(page.get(page.size() - 1), 3, Sort.by("title"));
+		}
+		assertEquals(expected, movies);
+	}
+
+	@Test
+	public void testSaveWritesChangedColumnsOnly() {
+		Movie movie = movieService.getMovieById(6L);
+		assertTrue(movie.isTracked());
+		assertTrue(movie.getDirtyFields().isEmpty());
+
+		// changed behind the back of the movie, must survive the update of the price category
+		jdbcTemplate.update("update MOVIES set MOVIE_TITLE = 'Changed' where MOVIE_ID = 6");
+		movie.setPriceCategory(movieService.getPriceCategoryByName("Children"));
+		movie.setRented(false);
+		assertEquals(EnumSet.of(Movie.Field.PRICE_CATEGORY), movie.getDirtyFields());
+		movieService.saveMovie(movie);
+
+		assertTrue(movie.getDirtyFields().isEmpty());
+		assertEquals("Changed", jdbcTemplate.queryForObject("select MOVIE_TITLE from MOVIES where MOVIE_ID = 6", String.class));
+		assertEquals(Long.valueOf(2L), jdbcTemplate.queryForObject("select PRICECATEGORY_FK from MOVIES where MOVIE_ID = 6", Long.class));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMoviePageUnknownSort() {
+		movieService.getMoviePage(null, 3, Sort.by("rented"));
+	}
+
 //	@Test
 //	public void changeMovie() {
 //		List<Movie> movies = movieService.getAllMovies();
@@ -171,4 +244,44 @@ public class MovieServiceTest {
 //		assertEquals(m1.getTitle(), m2.getTitle());
 //	}
 
+
+	private List<Long> filtered(MovieFilter filter) {
+		List<Long> ids = new ArrayList<>();
+		movieService.forEachMovieRow(filter, null, Integer.MAX_VALUE, (id, title, releaseDate, rented, priceCategory) -> {
+			assertTrue(filter.matches(title, releaseDate, rented, priceCategory));
+			ids.add(id);
+		});
+		return ids;
+	}
+
+	@Test
+	public void testMovieFilter() {
+		assertEquals(Arrays.asList(1L, 2L, 3L), filtered(MovieFilter.rented(true)));
+		assertEquals(Arrays.asList(4L, 5L, 6L, 7L, 8L, 9L, 10L), filtered(MovieFilter.rented(false)));
+		assertEquals(10, filtered(MovieFilter.ALL).size());
+
+		PriceCategory regular = movieService.getPriceCategoryByName("Regular");
+		assertEquals(Arrays.asList(6L), filtered(MovieFilter.rented(false).withPriceCategory(regular)));
+		assertEquals(Arrays.asList(1L, 2L, 6L), filtered(MovieFilter.ALL.withPriceCategory(regular)));
+
+		assertEquals(Arrays.asList(8L), filtered(MovieFilter.ALL.withTitlePrefix("Mo")));
+		assertEquals(Arrays.asList(7L), filtered(MovieFilter.ALL.withTitlePrefix("Fast &")));
+		// the wildcards of LIKE are matched literally
+		assertEquals(Arrays.asList(), filtered(MovieFilter.ALL.withTitlePrefix("M%")));
+		assertEquals(Arrays.asList(), filtered(MovieFilter.ALL.withTitlePrefix("M_mo")));
+
+		assertEquals(Arrays.asList(3L, 4L), filtered(MovieFilter.ALL.withReleaseDate(LocalDate.of(2017, 8, 18), LocalDate.of(2017, 8, 31))));
+		assertEquals(Arrays.asList(9L, 10L), filtered(MovieFilter.rented(false).withReleaseDate(LocalDate.of(2018, 10, 2), null)));
+
+		List<Long> page = new ArrayList<>();
+		movieService.forEachMovieRow(MovieFilter.rented(false), 4L, 2, (id, title, releaseDate, rented, priceCategory) -> page.add(id));
+		assertEquals(Arrays.asList(5L, 6L), page);
+	}
+
+	@Test
+	public void testMovieFilterUsesIndex() {
+		String plan = jdbcTemplate.queryForObject(
+			"explain select MOVIE_ID from MOVIES where MOVIE_RENTED = FALSE and MOVIE_TITLE like 'Mo%' escape '\\'", String.class);
+		assertTrue(plan, plan.contains("IDX_MOVIES_"));
+	}
 }
@@ -0,0 +1,84 @@
+package ch.fhnw.edu.rental.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+import ch.fhnw.edu.rental.model.ConfiguredPriceCategory;
+import ch.fhnw.edu.rental.model.Money;
+import ch.fhnw.edu.rental.model.Movie;
+import ch.fhnw.edu.rental.model.PriceCategory;
+import ch.fhnw.edu.rental.model.PriceCategoryChildren;
+import ch.fhnw.edu.rental.model.PriceCategoryNewRelease;
+import ch.fhnw.edu.rental.model.PriceCategoryRegular;
+import ch.fhnw.edu.rental.model.Rental;
+import ch.fhnw.edu.rental.model.TariffRules;
+import ch.fhnw.edu.rental.model.User;
+
+public class PriceCategoryTest {
+
+	@Test
+	public void testChargeCents() {
+		assertEquals(200, new PriceCategoryRegular().getChargeCents(1));
+		assertEquals(200, new PriceCategoryRegular().getChargeCents(2));
+		assertEquals(650, new PriceCategoryRegular().getChargeCents(5));
+		assertEquals(150, new PriceCategoryChildren().getChargeCents(3));
+		assertEquals(450, new PriceCategoryChildren().getChargeCents(5));
+		assertEquals(1500, new PriceCategoryNewRelease().getChargeCents(5));
+		assertEquals(6.5, new PriceCategoryRegular().getCharge(5), 0);
+	}
+
+	@Test
+	public void testTariffTable() {
+		PriceCategory[] categories = { new PriceCategoryRegular(), new PriceCategoryChildren(), new PriceCategoryNewRelease() };
+		PriceCategory[] tabled = { new PriceCategoryRegular(), new PriceCategoryChildren(), new PriceCategoryNewRelease() };
+		for (int i = 0; i < categories.length; i++) {
+			tabled[i].precompute(10);
+			// within the table, at its end and beyond it
+			for (int days = 1; days <= 20; days++) {
+				assertEquals(categories[i].getChargeCents(days), tabled[i].getChargeCents(days));
+				assertEquals(categories[i].getFrequentRenterPoints(days), tabled[i].getFrequentRenterPoints(days));
+			}
+		}
+		assertEquals(2, tabled[2].getFrequentRenterPoints(2));
+		assertEquals(1, tabled[2].getFrequentRenterPoints(1));
+	}
+
+	@Test
+	public void testTariffRules() {
+		PriceCategory promotion = new ConfiguredPriceCategory("Promotion", TariffRules.of(100, 3, 50, 1, 7, 2));
+		promotion.precompute(10);
+		assertEquals(100, promotion.getChargeCents(3));
+		assertEquals(200, promotion.getChargeCents(5));
+		assertEquals(1, promotion.getFrequentRenterPoints(6));
+		assertEquals(3, promotion.getFrequentRenterPoints(7));
+		assertEquals("Promotion", promotion.toString());
+		// stored rules replace the defaults of a known category
+		assertEquals(400, new PriceCategoryNewRelease(TariffRules.of(0, 0, 200, 1, 2, 1)).getChargeCents(2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeTariffRules() {
+		TariffRules.of(100, 3, -50, 1, 0, 0);
+	}
+
+	@Test
+	public void testUserChargeIsExact() {
+		User user = new User("Muster", "Hans");
+		new Rental(user, Movie.of("A", LocalDate.now(), new PriceCategoryRegular()), 3);
+		new Rental(user, Movie.of("B", LocalDate.now(), new PriceCategoryChildren()), 1);
+		// 3.50 + 1.50 was truncated to 4 before
+		assertEquals(500, user.getChargeCents());
+		assertEquals(5.0, user.getCharge(), 0);
+	}
+
+	@Test
+	public void testFormat() {
+		assertEquals(150, Money.cents(1, 50));
+		assertEquals("1.50", Money.format(150));
+		assertEquals("0.05", Money.format(5));
+		assertEquals("-1.05", Money.format(-105));
+	}
+}
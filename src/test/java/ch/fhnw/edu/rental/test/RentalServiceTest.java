@@ -1,5 +1,6 @@
 package ch.fhnw.edu.rental.test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.Assert;
@@ -56,7 +57,48 @@ public class RentalServiceTest {
 		List<Rental> rentals = rentalService.getAllRentals();
 		Assert.assertEquals(3, rentals.size());
 	}
+
+	@Test
+	public void testForEachRental() {
+		List<Rental> rentals = new ArrayList<>();
+		rentalService.forEachRental(rentals::add);
+		Assert.assertEquals(rentalService.getAllRentals().size(), rentals.size());
+		for (Rental r : rentals) {
+			Assert.assertTrue(r.getUser().getRentals().contains(r));
+			Assert.assertNotNull(r.getMovie());
+		}
+	}
 	
+	@Test
+	public void testForEachRentalRow() {
+		List<Rental> rentals = rentalService.getAllRentals();
+		List<Long> ids = new ArrayList<>();
+		rentalService.forEachRentalRow(null, 10, (id, rentalDays, rentalDate, lastName, firstName, movieTitle, priceCategory) -> {
+			Rental r = rentals.get(ids.size());
+			Assert.assertEquals(r.getId().longValue(), id);
+			Assert.assertEquals(r.getRentalDays(), rentalDays);
+			Assert.assertEquals(r.getRentalDate(), rentalDate);
+			Assert.assertEquals(r.getUser().getLastName(), lastName);
+			Assert.assertEquals(r.getUser().getFirstName(), firstName);
+			Assert.assertEquals(r.getMovie().getTitle(), movieTitle);
+			Assert.assertEquals(r.getRentalFeeCents(), priceCategory.getChargeCents(rentalDays));
+			ids.add(id);
+		});
+		Assert.assertEquals(rentals.size(), ids.size());
+
+		List<Long> page = new ArrayList<>();
+		rentalService.forEachRentalRow(ids.get(0), 1, (id, rentalDays, rentalDate, lastName, firstName, movieTitle, priceCategory) -> page.add(id));
+		Assert.assertEquals(ids.subList(1, 2), page);
+
+		User user = userService.getUsersByName("Keller").get(0);
+		List<Long> ofUser = new ArrayList<>();
+		rentalService.forEachRentalRowOfUser(user.getId(), (id, rentalDays, rentalDate, lastName, firstName, movieTitle, priceCategory) -> {
+			Assert.assertEquals("Keller", lastName);
+			ofUser.add(id);
+		});
+		Assert.assertEquals(user.getRentals().size(), ofUser.size());
+	}
+
 	@Test
 	public void testGetAllRentalInfos() {
 		List<Rental> rentals = rentalService.getAllRentals();
@@ -98,4 +140,13 @@ public class RentalServiceTest {
 		user = userService.getUserById(user.getId());
 		Assert.assertEquals(1, user.getRentals().size());
 	}
+
+	@Test
+	public void testSameInstancesWithinTransaction() {
+		Rental rental = rentalService.getRentalById(1L);
+		User user = userService.getUserById(rental.getUser().getId());
+		Assert.assertSame(rental.getUser(), user);
+		Assert.assertSame(rental, user.getRentals().get(0));
+		Assert.assertSame(rental.getMovie(), movieService.getMovieById(rental.getMovie().getId()));
+	}
 }
@@ -0,0 +1,74 @@
+package ch.fhnw.edu.rental.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ch.fhnw.edu.rental.services.impl.StripedLock;
+
+public class StripedLockTest {
+
+	@Test
+	public void testStripesAreRoundedUp() {
+		assertEquals(1, new StripedLock(1).getStripes());
+		assertEquals(8, new StripedLock(5).getStripes());
+		assertEquals(64, new StripedLock(64).getStripes());
+	}
+
+	@Test
+	public void testSameMovieIsSerialized() throws Exception {
+		StripedLock locks = new StripedLock(4);
+		int[] counters = new int[10];
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int t = 0; t < 8; t++) {
+			executor.execute(() -> {
+				for (int i = 0; i < 10000; i++) {
+					int movie = i % counters.length;
+					locks.withLock(movie, () -> { counters[movie]++; });
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+		for (int counter : counters) {
+			assertEquals(8 * 1000, counter);
+		}
+		assertEquals(8 * 10000, locks.getAcquisitions());
+	}
+
+	@Test
+	public void testContentionIsCounted() throws Exception {
+		StripedLock locks = new StripedLock(16);
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread(() -> locks.withLock(7L, () -> {
+			locked.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+		holder.start();
+		locked.await();
+
+		Thread waiter = new Thread(() -> locks.withLock(7L, () -> { }));
+		waiter.start();
+		while (locks.getContentions() == 0) {
+			Thread.sleep(1);
+		}
+		release.countDown();
+		holder.join();
+		waiter.join();
+
+		assertEquals(2, locks.getAcquisitions());
+		assertEquals(1, locks.getContentions());
+	}
+}
@@ -1,11 +1,17 @@
 package ch.fhnw.edu.rental.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -17,6 +23,9 @@ import org.springframework.transaction.annotation.Transactional;
 import ch.fhnw.edu.rental.model.Movie;
 import ch.fhnw.edu.rental.model.Rental;
 import ch.fhnw.edu.rental.model.User;
+import ch.fhnw.edu.rental.model.UserBalance;
+import ch.fhnw.edu.rental.persistence.Sort;
+import ch.fhnw.edu.rental.services.MovieService;
 import ch.fhnw.edu.rental.services.RentalService;
 import ch.fhnw.edu.rental.services.UserService;
 
@@ -31,6 +40,9 @@ public class UserServiceTest {
 	@Autowired
 	private RentalService rentalService;
 
+	@Autowired
+	private MovieService movieService;
+
 	@Test
 	public void testGetAllUsers() {
 		List<User> users = userService.getAllUsers();
@@ -119,5 +131,194 @@ public class UserServiceTest {
 		user = users.get(0);
 		assertEquals("Knecht", user.getLastName());
 	}
-}
 
+	@Test
+	public void testGetNumberOfRentals() {
+		for (User user : userService.getAllUsers()) {
+			assertEquals(user.getRentals().size(), userService.getNumberOfRentals(user.getId()));
+		}
+	}
+
+	@Test
+	public void testRentReturnedMovie() {
+		User user = userService.getUsersByName("Keller").get(0);
+		Movie movie = user.getRentals().get(0).getMovie();
+		userService.returnMovie(user, movie);
+		assertEquals(1, userService.getNumberOfRentals(user.getId()));
+
+		Rental rental = userService.rentMovie(userService.getUsersByName("Kummer").get(0), movie, 2);
+		assertNotNull(rental.getId());
+		assertTrue(movie.isRented());
+	}
+
+	@Test
+	public void testRentAddsToRentalsOfUser() {
+		// rentals not loaded before the rent
+		User kummer = userService.getUserById(4L);
+		Rental rental = userService.rentMovie(kummer, movieService.getMovieById(4L), 2);
+		assertEquals(Arrays.asList(rental), kummer.getRentals());
+
+		// rentals loaded before the rent
+		User keller = userService.getUserById(1L);
+		assertEquals(2, keller.getRentals().size());
+		rental = userService.rentMovie(keller, movieService.getMovieById(5L), 2);
+		assertEquals(3, keller.getRentals().size());
+		assertTrue(keller.getRentals().contains(rental));
+		assertTrue(movieService.getMovieById(5L).isRented());
+	}
+
+	@Test
+	public void testReturnByIds() {
+		assertTrue(userService.returnRental(1L));
+		assertFalse(userService.returnRental(1L));
+		assertNull(rentalService.getRentalById(1L));
+
+		Rental rental = rentalService.getRentalById(3L);
+		assertTrue(userService.returnMovie(rental.getMovie().getId()));
+		assertFalse(rental.getMovie().isRented());
+		assertFalse(userService.returnMovie(rental.getMovie().getId()));
+		assertEquals(1, rentalService.getAllRentals().size());
+	}
+
+	@Test
+	public void testBalance() {
+		for (User user : userService.getAllUsers()) {
+			assertEquals(user.getChargeCents(), userService.getBalance(user.getId()).getChargeCents());
+		}
+		assertEquals(2, userService.getBalance(1L).getFrequentRenterPoints());
+		assertEquals(0, userService.getBalance(2L).getChargeCents());
+		assertNull(userService.getBalance(99L));
+
+		User kummer = userService.getUserById(4L);
+		Movie movie = movieService.getMovieById(4L);
+		userService.rentMovie(kummer, movie, 3);
+		assertBalance(900, 2, 4L);
+		userService.rentMovies(kummer, Arrays.asList(movieService.getMovieById(5L), movieService.getMovieById(6L)), 1);
+		assertBalance(900 + 300 + 200, 4, 4L);
+		userService.returnMovie(kummer, movie);
+		// the points are kept
+		assertBalance(500, 4, 4L);
+
+		userService.returnRental(1L);
+		assertBalance(54650, 2, 1L);
+		rentalService.deleteRental(rentalService.getRentalById(2L));
+		assertBalance(0, 2, 1L);
+		userService.returnMovie(3L);
+		assertBalance(0, 1, 3L);
+	}
+
+	@Test
+	public void testBalanceAfterCategoryChange() {
+		User kummer = userService.getUserById(4L);
+		Movie byMovie = movieService.getMovieById(4L);
+		Movie byUser = movieService.getMovieById(5L);
+		// New Release, 3 days each
+		userService.rentMovie(kummer, byMovie, 3);
+		Rental rental = userService.rentMovie(kummer, byUser, 3);
+		assertEquals(Long.valueOf(900), rental.getChargedCents());
+		assertBalance(1800, 4, 4L);
+
+		for (Movie movie : Arrays.asList(byMovie, byUser)) {
+			movie.setPriceCategory(movieService.getPriceCategoryByName("Regular"));
+			movieService.saveMovie(movie);
+		}
+		// the fees charged when rented are subtracted, not the Regular fee of 3.50
+		userService.returnMovie(byMovie.getId());
+		assertBalance(900, 4, 4L);
+		userService.returnMovie(kummer, byUser);
+		assertBalance(0, 4, 4L);
+	}
+
+	@Test
+	public void testUserPagesWithNullLastName() {
+		userService.save(new User(null, "Nora"));
+		userService.save(new User(null, "Nina"));
+		Comparator<User> order = Comparator.comparing(User::getLastName, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+			.thenComparing(User::getId);
+		for (Sort.Direction direction : Sort.Direction.values()) {
+			Sort sort = Sort.by("lastName", direction);
+			List<User> expected = new ArrayList<>(userService.getAllUsers());
+			expected.sort(direction == Sort.Direction.ASC ? order : order.reversed());
+
+			List<User> users = new ArrayList<>();
+			List<User> page = userService.getUserPage(null, 2, sort);
+			while (!page.isEmpty()) {
+				users.addAll(page);
+				page = userService.getUserPage(page.get(page.size() - 1), 2, sort);
+			}
+			assertEquals(ids(expected), ids(users));
+		}
+
+		// the position is kept if the last user of the page is deleted meanwhile
+		List<User> first = userService.getUserPage(null, 1, Sort.by("lastName"));
+		assertNull(first.get(0).getLastName());
+		userService.deleteUser(first.get(0));
+		List<User> next = userService.getUserPage(first.get(0), 1, Sort.by("lastName"));
+		assertEquals(1, next.size());
+		assertNull(next.get(0).getLastName());
+	}
+
+	private static List<Long> ids(List<User> users) {
+		return users.stream().map(User::getId).collect(Collectors.toList());
+	}
+
+	private void assertBalance(long chargeCents, int points, Long userId) {
+		UserBalance balance = userService.getBalance(userId);
+		assertEquals(chargeCents, balance.getChargeCents());
+		assertEquals(points, balance.getFrequentRenterPoints());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReturnMovieNotRented() {
+		User user = userService.getUsersByName("Kummer").get(0);
+		userService.returnMovie(user, rentalService.getRentalById(1L).getMovie());
+	}
+
+	@Test
+	public void testRentMovies() {
+		User user = userService.getUsersByName("Kummer").get(0);
+		List<Movie> movies = movieService.getMoviesById(Arrays.asList(4L, 5L, 6L));
+		List<Rental> rentals = userService.rentMovies(user, movies, 5);
+
+		assertEquals(3, rentals.size());
+		assertEquals(3, userService.getNumberOfRentals(user.getId()));
+		for (Rental rental : rentals) {
+			assertNotNull(rental.getId());
+			assertTrue(rental.getMovie().isRented());
+			assertTrue(user.getRentals().contains(rental));
+		}
+	}
+
+	@Test
+	public void testRentMoviesAllOrNothing() {
+		User user = userService.getUsersByName("Kummer").get(0);
+		Movie available = movieService.getMovieById(4L);
+		Movie rented = rentalService.getRentalById(1L).getMovie();
+		Movie outdated = Movie.of(rented.getTitle(), rented.getReleaseDate(), false, rented.getPriceCategory()).withId(rented.getId());
+		try {
+			userService.rentMovies(user, Arrays.asList(available, outdated), 5);
+			fail("movie is rented already");
+		} catch (IllegalStateException e) {
+			assertFalse(available.isRented());
+			assertTrue(user.getRentals().isEmpty());
+			assertEquals(0, userService.getNumberOfRentals(user.getId()));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRentMovieRentedInStore() {
+		Movie rented = rentalService.getRentalById(1L).getMovie();
+		assertTrue(rented.isRented());
+		// an outdated copy which still shows the movie as available
+		Movie outdated = Movie.of(rented.getTitle(), rented.getReleaseDate(), false, rented.getPriceCategory()).withId(rented.getId());
+		userService.rentMovie(userService.getUsersByName("Kummer").get(0), outdated, 3);
+	}
+
+	@Test
+	public void testGetUserByEmail() {
+		User user = userService.getUserByEmail("werner.knecht@gmail.com");
+		assertNotNull(user);
+		assertEquals("Knecht", user.getLastName());
+		assertNull(userService.getUserByEmail("nobody@example.com"));
+	}
+}